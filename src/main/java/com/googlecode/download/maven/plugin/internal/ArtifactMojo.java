@@ -17,40 +17,48 @@ package com.googlecode.download.maven.plugin.internal;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
-import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
-import org.apache.maven.artifact.versioning.VersionRange;
 import org.apache.maven.execution.MavenSession;
-import org.apache.maven.model.Dependency;
-import org.apache.maven.model.building.ModelBuildingRequest;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.DefaultProjectBuildingRequest;
-import org.apache.maven.project.ProjectBuilder;
-import org.apache.maven.project.ProjectBuildingResult;
 import org.codehaus.plexus.archiver.UnArchiver;
 import org.codehaus.plexus.archiver.manager.ArchiverManager;
 import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
+import org.codehaus.plexus.archiver.zip.AbstractZipUnArchiver;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.CollectResult;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
-import org.eclipse.aether.resolution.ArtifactResult;
 
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static org.apache.maven.RepositoryUtils.toArtifact;
@@ -65,21 +73,21 @@ import static org.apache.maven.RepositoryUtils.toArtifact;
 @Mojo(name = "artifact", defaultPhase = LifecyclePhase.PROCESS_RESOURCES, requiresProject = false)
 public class ArtifactMojo extends AbstractMojo {
     /**
-     * The artifact Id of the file to download.
+     * The artifact Id of the file to download. Required unless {@link #artifacts} are given.
      */
-    @Parameter(property = "artifactId", required = true)
+    @Parameter(property = "artifactId")
     private String artifactId;
 
     /**
-     * The group Id of the file to download.
+     * The group Id of the file to download. Required unless {@link #artifacts} are given.
      */
-    @Parameter(property = "groupId", required = true)
+    @Parameter(property = "groupId")
     private String groupId;
 
     /**
-     * The version of the file to download.
+     * The version of the file to download. Required unless {@link #artifacts} are given.
      */
-    @Parameter(property = "version", required = true)
+    @Parameter(property = "version")
     private String version;
 
     /**
@@ -94,6 +102,27 @@ public class ArtifactMojo extends AbstractMojo {
     @Parameter(property = "classifier")
     private String classifier;
 
+    /**
+     * Artifacts to download, as {@code groupId:artifactId:version[:type[:classifier]]} coordinates, in addition
+     * to the one given by {@link #groupId}, {@link #artifactId} and {@link #version}, if any. On the command line,
+     * coordinates are separated by commas. All the artifacts and their dependencies are resolved together, each
+     * distinct artifact being downloaded once.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "artifacts")
+    private String[] artifacts;
+
+    /**
+     * Maximum number of resolved artifacts copied concurrently into the {@link #outputDirectory}. Unpacked
+     * artifacts are extracted one after the other, each one on {@link #unpackThreads} threads, so that entries
+     * present in several of them are replaced in a predictable order.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "threads", defaultValue = "4")
+    private int threads;
+
     /**
      * Location of the file.
      *
@@ -112,12 +141,50 @@ public class ArtifactMojo extends AbstractMojo {
     @Parameter(property = "outputFileName")
     private String outputFileName;
 
+    /**
+     * How artifacts are put into the output directory when they are not unpacked: {@code copy},
+     * {@code hardlink} to the file of the local repository, or {@code symlink} to it. Links fall back to copies
+     * where the file system does not support them. As a linked file shares its content with the local repository,
+     * it must not be modified in place.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "outputMode", defaultValue = "copy")
+    private String outputMode;
+
     /**
      * Whether to unpack the artifact
      */
     @Parameter(property = "unpack", defaultValue = "false")
     private boolean unpack;
 
+    /**
+     * Number of threads extracting a zip based artifact when {@link #unpack} is set,
+     * {@code 0} meaning one per available processor.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "unpackThreads", defaultValue = "0")
+    private int unpackThreads;
+
+    /**
+     * Ant-style patterns of the archive entries to extract when {@link #unpack} is set, e.g. {@code META-INF/**}.
+     * All entries are extracted if none is given. Entries which are not selected are skipped without being
+     * decompressed where the format allows it.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "includes")
+    private String[] includes;
+
+    /**
+     * Ant-style patterns of the archive entries not to extract when {@link #unpack} is set.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "excludes")
+    private String[] excludes;
+
     /**
      * Whether to skip execution of Mojo
      */
@@ -131,6 +198,62 @@ public class ArtifactMojo extends AbstractMojo {
     @Parameter(property = "dependencyDepth", defaultValue = "0")
     private long dependencyDepth;
 
+    /**
+     * Scopes of the dependencies to download when {@link #dependencyDepth} is set, e.g. {@code compile,runtime}.
+     * Dependencies of all scopes but the {@link #excludeScopes} are downloaded if none is given.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "includeScopes")
+    private String[] includeScopes;
+
+    /**
+     * Scopes of the dependencies not to download when {@link #dependencyDepth} is set, none by default. Set it to
+     * {@code test,provided,system} to follow the dependencies as Maven itself does.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "excludeScopes")
+    private String[] excludeScopes;
+
+    /**
+     * Whether to download optional dependencies when {@link #dependencyDepth} is set, which is the case by default.
+     * Set it to {@code false} to leave them out as Maven itself does.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "includeOptional", defaultValue = "true")
+    private boolean includeOptional;
+
+    /**
+     * Patterns of the dependencies to download when {@link #dependencyDepth} is set, as
+     * {@code groupId[:artifactId[:version[:type[:classifier]]]]} with {@code *} wildcards,
+     * e.g. {@code org.apache.*}. All dependencies are downloaded if none is given. A dependency which is not
+     * downloaded is not traversed either. Requested {@link #artifacts} are always downloaded.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "dependencyIncludes")
+    private String[] dependencyIncludes;
+
+    /**
+     * Patterns of the dependencies not to download when {@link #dependencyDepth} is set, with the same form as
+     * {@link #dependencyIncludes}. The {@code <exclusions>} declared by dependencies are honored as well.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "dependencyExcludes")
+    private String[] dependencyExcludes;
+
+    /**
+     * Maximum number of artifacts resolved concurrently, along with their dependencies when
+     * {@link #dependencyDepth} is set.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "resolverThreads", defaultValue = "4")
+    private int resolverThreads;
+
     /**
      * The Maven Session.
      */
@@ -149,12 +272,6 @@ public class ArtifactMojo extends AbstractMojo {
     @Inject
     protected RepositorySystem repositorySystem;
 
-    /**
-     * The (injected) {@link ProjectBuilder} instance.
-     */
-    @Inject
-    protected ProjectBuilder projectBuilder;
-
     /**
      * Will download the specified artifact in the specified directory.
      *
@@ -169,135 +286,260 @@ public class ArtifactMojo extends AbstractMojo {
         if (this.dependencyDepth > 0 && this.outputFileName != null) {
             throw new MojoExecutionException("Cannot have a dependency depth higher than 0 and an outputFileName");
         }
-        final Artifact artifact = artifactFactory.createArtifactWithClassifier(groupId, artifactId, version, type,
-                classifier);
+        try {
+            this.outputMode();
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        final List<Artifact> roots = this.createRootArtifacts();
+        if (roots.size() > 1 && this.outputFileName != null) {
+            throw new MojoExecutionException("Cannot have several artifacts and an outputFileName");
+        }
         createOutputDirectoryIfNecessary();
+        final List<Artifact> resolved;
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.resolverThreads),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "artifact-resolver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
         try {
-            downloadAndAddArtifact(artifact, dependencyDepth)
-                    .thenAccept(artifacts -> artifacts.forEach(copy -> {
-                        try {
-                            if (this.unpack) {
-                                this.unpackFileToDirectory(copy);
-                            } else {
-                                this.copyFileToDirectory(copy);
-                            }
-                        } catch (Exception e) {
-                            throw new RuntimeException();
-                        }
-                    })).toCompletableFuture()
-                    .get();
-        } catch (Exception e) {
+            resolved = this.resolveArtifacts(roots, executor);
+        } catch (DependencyCollectionException e) {
             throw new MojoExecutionException("Abnormal termination of the retrieval", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while resolving artifacts", e);
+        } catch (ExecutionException e) {
+            throw new MojoExecutionException("Abnormal termination of the retrieval", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (this.unpack) {
+            try {
+                for (Artifact copy : resolved) {
+                    this.unpackFileToDirectory(copy);
+                }
+            } catch (Exception e) {
+                throw new MojoExecutionException("Abnormal termination of the retrieval", e);
+            }
+        } else {
+            this.copyFilesToDirectory(resolved);
         }
     }
 
     /**
-     * Download the artifact when possible and copy it to the target directory
-     * and will fetch the dependency until the specified depth is reached.
-     *
-     * @param artifact The artifact to download and set.
-     * @param maxDepth The depth that will be downloaded for the dependencies.
-     * @return completion stage which, when complete, conains a set of resolved dependency artifacts
-     */
-    private CompletionStage<Set<Artifact>> downloadAndAddArtifact(Artifact artifact, long maxDepth) {
-        return this.downloadArtifact(artifact)
-                .thenApply(downloadedArtifact -> {
-                    Set<Artifact> result = new HashSet<>();
-                    result.add(downloadedArtifact);
-                    if (maxDepth > 0) {
-                        this.resolveDependencyArtifacts(downloadedArtifact)
-                                .forEach(completionStage -> {
-                                    try {
-                                        completionStage.thenCompose(artifact1 -> downloadAndAddArtifact(artifact1,
-                                                        maxDepth - 1))
-                                                    .toCompletableFuture()
-                                                    .thenAccept(result::addAll)
-                                                .get();
-                                    } catch (InterruptedException | ExecutionException e) {
-                                        throw new RuntimeException(e);
-                                    }
-                                });
+     * @return the requested artifacts, given by {@link #groupId}, {@link #artifactId} and {@link #version}
+     * and by {@link #artifacts}, without duplicates
+     * @throws MojoExecutionException if no artifact is requested or coordinates are invalid
+     */
+    private List<Artifact> createRootArtifacts() throws MojoExecutionException {
+        final Map<String, Artifact> roots = new LinkedHashMap<>();
+        if (this.groupId != null || this.artifactId != null || this.version != null) {
+            if (this.groupId == null || this.artifactId == null || this.version == null) {
+                throw new MojoExecutionException("groupId, artifactId and version must all be set");
+            }
+            final Artifact artifact = artifactFactory.createArtifactWithClassifier(groupId, artifactId, version,
+                    type, classifier);
+            roots.put(artifact.getId(), artifact);
+        }
+        if (this.artifacts != null) {
+            for (String entry : this.artifacts) {
+                for (String coordinates : entry.split(",")) {
+                    if (!coordinates.trim().isEmpty()) {
+                        final Artifact artifact = this.createArtifact(coordinates.trim());
+                        roots.putIfAbsent(artifact.getId(), artifact);
                     }
-                    return result;
-                });
+                }
+            }
+        }
+        if (roots.isEmpty()) {
+            throw new MojoExecutionException("Either groupId, artifactId and version or artifacts must be set");
+        }
+        return new ArrayList<>(roots.values());
     }
 
     /**
-     * Will fetch a list of all the transitive dependencies for an artifact and
-     * return a list of completion stages, which will contain the downloaded
-     * artifacts when complete
-     *
-     * @param artifact The artifact for which transitive dependencies need to be
-     *                 downloaded.
-     * @return list of completion stages, which will contain the downloaded
-     * artifacts when complete
-     */
-    private List<CompletionStage<Artifact>> resolveDependencyArtifacts(Artifact artifact) {
-        final Artifact pomArtifact = artifactFactory.createProjectArtifact(artifact.getGroupId(),
-                artifact.getArtifactId(),
-                artifact.getVersion());
-        if (getLog().isDebugEnabled()) {
-            getLog().debug(String.format("Resolving dependencies for artifact %s...", artifact.getId()));
+     * @param coordinates {@code groupId:artifactId:version[:type[:classifier]]}
+     * @return the artifact
+     * @throws MojoExecutionException if the coordinates are invalid
+     */
+    private Artifact createArtifact(String coordinates) throws MojoExecutionException {
+        final String[] parts = coordinates.split(":", -1);
+        if (parts.length < 3 || parts.length > 5 || Arrays.stream(parts).anyMatch(part -> part.trim().isEmpty())) {
+            throw new MojoExecutionException("Invalid artifact coordinates " + coordinates
+                    + ", expected groupId:artifactId:version[:type[:classifier]]");
         }
-        try {
-            final ProjectBuildingResult result = projectBuilder.build(pomArtifact, false,
-                    new DefaultProjectBuildingRequest() {{
-                        setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
-                        setResolveDependencies(false);
-                        setLocalRepository(session.getLocalRepository());
-                        setRemoteRepositories(session.getCurrentProject().getRemoteArtifactRepositories());
-                        setUserProperties(session.getUserProperties());
-                        setSystemProperties(session.getSystemProperties());
-                        setActiveProfileIds(session.getRequest().getActiveProfiles());
-                        setInactiveProfileIds(session.getRequest().getInactiveProfiles());
-                        setRepositorySession(session.getRepositorySession());
-                        setBuildStartTime(session.getStartTime());
-                    }});
-            return result.getProject().getDependencies().stream()
-                    .map(this::createDependencyArtifact)
-                    .map(this::downloadArtifact)
-                    .collect(Collectors.toList());
+        return artifactFactory.createArtifactWithClassifier(parts[0].trim(), parts[1].trim(), parts[2].trim(),
+                parts.length > 3 ? parts[3].trim() : "jar", parts.length > 4 ? parts[4].trim() : null);
+    }
+
+    /**
+     * Resolves the artifacts and their dependencies down to the {@link #dependencyDepth}.
+     * <p>
+     * The dependency graph of all the artifacts is collected by the resolver at once, which reads each descriptor
+     * once whatever the number of paths leading to it and mediates the versions of the artifacts reached several
+     * times. The artifacts of the graph are then resolved concurrently on the executor, each one once.
+     *
+     * @param roots The artifacts to download.
+     * @param executor executor resolving the artifacts
+     * @return the resolved artifacts, the requested ones first
+     * @throws DependencyCollectionException if the dependency graph cannot be collected
+     * @throws InterruptedException if interrupted while waiting for the artifacts to be resolved
+     * @throws ExecutionException if any artifact cannot be resolved
+     */
+    private List<Artifact> resolveArtifacts(List<Artifact> roots, Executor executor)
+            throws DependencyCollectionException, InterruptedException, ExecutionException {
+        final RepositorySystemSession repositorySession = this.createRepositorySession();
+        final List<RemoteRepository> repositories = session.getCurrentProject().getRemoteProjectRepositories();
+        final Map<String, CompletableFuture<Artifact>> resolutions = new LinkedHashMap<>();
+        // requested explicitly, so that version mediation never drops one of them
+        for (Artifact root : roots) {
+            final ArtifactRequest request = new ArtifactRequest(toArtifact(root), repositories, getClass().getName());
+            resolutions.put(key(request.getArtifact()), this.resolveArtifact(request, repositorySession, executor));
         }
-        catch (Exception e) {
-            throw new RuntimeException(e);
+        if (this.dependencyDepth > 0) {
+            if (getLog().isDebugEnabled()) {
+                getLog().debug(String.format("Collecting dependencies for artifacts %s...", roots));
+            }
+            final CollectResult result = repositorySystem.collectDependencies(repositorySession,
+                    new CollectRequest(roots.stream()
+                            .map(root -> new Dependency(toArtifact(root), null))
+                            .collect(Collectors.toList()), null, repositories));
+            this.resolveArtifacts(result.getRoot().getChildren(), resolutions, repositorySession, executor);
         }
+        CompletableFuture.allOf(resolutions.values().toArray(new CompletableFuture<?>[0])).get();
+        return resolutions.values().stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
     }
 
-    private Artifact createDependencyArtifact(Dependency d) {
-        try {
-            return artifactFactory.createDependencyArtifact(d.getGroupId(),
-                    d.getArtifactId(),
-                    VersionRange.createFromVersionSpec(d.getVersion()),
-                    d.getType(),
-                    d.getClassifier(),
-                    d.getScope());
-        } catch (InvalidVersionSpecificationException e) {
-            throw new RuntimeException(e);
+    /**
+     * @return the repository session of the build, only selecting the dependencies down to the
+     * {@link #dependencyDepth} which match the filters
+     */
+    private RepositorySystemSession createRepositorySession() {
+        final DefaultRepositorySystemSession repositorySession =
+                new DefaultRepositorySystemSession(session.getRepositorySession());
+        // the requested artifacts are the dependencies of the collect request, at depth 1
+        repositorySession.setDependencySelector(new TransitiveDependencySelector(this.dependencyDepth + 1,
+                this.includeScopes, this.excludeScopes, this.includeOptional, this.dependencyIncludes,
+                this.dependencyExcludes));
+        return repositorySession;
+    }
+
+    /**
+     * Starts resolving the artifacts of a dependency graph, breadth first, so that each one is recorded with the
+     * depth at which it is first reached.
+     *
+     * @param roots nodes of the requested artifacts
+     * @param resolutions resolutions by artifact coordinates, one being started for each artifact not listed yet
+     * @param repositorySession repository session resolving the artifacts
+     * @param executor executor resolving the artifacts
+     */
+    private void resolveArtifacts(List<DependencyNode> roots, Map<String, CompletableFuture<Artifact>> resolutions,
+                                  RepositorySystemSession repositorySession, Executor executor) {
+        final Set<String> visited = new HashSet<>();
+        List<DependencyNode> level = roots;
+        for (long depth = 0L; !level.isEmpty(); ++depth) {
+            final List<DependencyNode> next = new ArrayList<>();
+            for (DependencyNode node : level) {
+                if (node.getArtifact() == null) {
+                    continue;
+                }
+                final String key = key(node.getArtifact());
+                if (!visited.add(key)) {
+                    continue;
+                }
+                if (getLog().isDebugEnabled()) {
+                    getLog().debug(String.format("Resolving %s, first reached at depth %d", key, depth));
+                }
+                resolutions.computeIfAbsent(key, ignored ->
+                        this.resolveArtifact(new ArtifactRequest(node), repositorySession, executor));
+                next.addAll(node.getChildren());
+            }
+            level = next;
         }
     }
 
     /**
-     * Downloads the given dependency artifact in a separate thread.
+     * @return the coordinates of an artifact, {@code groupId:artifactId:extension:classifier:version}
+     */
+    private static String key(org.eclipse.aether.artifact.Artifact artifact) {
+        return String.join(":", artifact.getGroupId(), artifact.getArtifactId(), artifact.getExtension(),
+                artifact.getClassifier(), artifact.getVersion());
+    }
+
+    /**
+     * Resolves the given artifact on the executor.
      *
-     * @param artifact artifact to be downloaded
-     * @return completion stage which contains the given artifact when complete
+     * @param request request of the artifact to be downloaded
+     * @param repositorySession repository session resolving the artifact
+     * @param executor executor resolving the artifact
+     * @return future of the resolved artifact
      */
-    private CompletionStage<Artifact> downloadArtifact(Artifact artifact) {
+    private CompletableFuture<Artifact> resolveArtifact(ArtifactRequest request,
+                                                        RepositorySystemSession repositorySession,
+                                                        Executor executor) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                final ArtifactResult artifactResult = repositorySystem.resolveArtifact(session.getRepositorySession(),
-                        new ArtifactRequest(toArtifact(artifact),
-                                session.getCurrentProject().getRemoteProjectRepositories(),
-                                getClass().getName()));
-                artifact.setFile(artifactResult.getArtifact().getFile());
-                artifact.setVersion(artifactResult.getArtifact().getVersion());
-                artifact.setResolved(artifactResult.isResolved());
-                return artifact;
+                return toArtifact(repositorySystem.resolveArtifact(repositorySession, request).getArtifact());
+            } catch (ArtifactResolutionException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Copies the artifacts into the output directory on up to {@link #threads} threads. Artifacts with the same
+     * file name are copied one after the other, in order, so that the last one wins.
+     *
+     * @param artifacts The artifacts already resolved to be copied.
+     * @throws MojoExecutionException If an artifact could not be copied.
+     */
+    private void copyFilesToDirectory(List<Artifact> artifacts) throws MojoExecutionException {
+        final Map<String, List<Artifact>> byName = new LinkedHashMap<>();
+        for (Artifact artifact : artifacts) {
+            final String name = artifact.getFile() == null ? artifact.getId() : artifact.getFile().getName();
+            byName.computeIfAbsent(name, key -> new ArrayList<>()).add(artifact);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(this.threads, byName.size())), runnable -> {
+                    final Thread thread = new Thread(runnable, "artifact-copy");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (List<Artifact> group : byName.values()) {
+                futures.add(executor.submit(() -> {
+                    for (Artifact artifact : group) {
+                        this.copyFileToDirectory(artifact);
+                    }
+                    return null;
+                }));
+            }
+            final List<Throwable> failures = new ArrayList<>();
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause());
+                }
             }
-            catch (ArtifactResolutionException e) {
-                throw new RuntimeException(e);
+            if (!failures.isEmpty()) {
+                final MojoExecutionException exception = new MojoExecutionException(String.format(
+                        "Abnormal termination of the retrieval, %d of %d files not copied: %s",
+                        failures.size(), byName.size(), failures.get(0).getMessage()), failures.get(0));
+                failures.stream().skip(1).forEach(exception::addSuppressed);
+                throw exception;
             }
-        });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while copying artifacts", e);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     /**
@@ -315,16 +557,32 @@ public class ArtifactMojo extends AbstractMojo {
         try {
             File outputFile = new File(outputDirectory, Optional.ofNullable(this.outputFileName)
                     .orElse(artifact.getFile().getName()));
-            Files.copy(artifact.getFile().toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            this.outputMode().place(artifact.getFile().toPath(), outputFile.toPath(), getLog());
         } catch (IOException e) {
             throw new MojoFailureException("Error copying the file : " + e.getMessage());
         }
     }
 
-    private void unpackFileToDirectory(Artifact artifact) throws NoSuchArchiverException {
+    /**
+     * @return the {@link #outputMode}
+     * @throws IllegalArgumentException if it is not a known mode
+     */
+    private OutputMode outputMode() {
+        return this.outputMode == null ? OutputMode.COPY : OutputMode.of(this.outputMode);
+    }
+
+    private void unpackFileToDirectory(Artifact artifact) throws NoSuchArchiverException, IOException {
         final File toUnpack = artifact.getFile();
         if (toUnpack != null && toUnpack.exists() && toUnpack.isFile()) {
+            final EntrySelector selector = EntrySelector.of(this.includes, this.excludes);
             UnArchiver unarchiver = this.archiverManager.getUnArchiver(toUnpack);
+            if (unarchiver instanceof AbstractZipUnArchiver) {
+                new ZipExtractor(this.outputDirectory, null, selector, this.unpackThreads, getLog()).extract(toUnpack);
+                return;
+            }
+            if (selector != null) {
+                unarchiver.setFileSelectors(new FileSelector[] {selector.asFileSelector()});
+            }
             unarchiver.setSourceFile(toUnpack);
             unarchiver.setDestDirectory(this.outputDirectory);
             unarchiver.extract();
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of pooled connection managers shared by all {@link HttpFileRequester} instances
+ * living in the same JVM.
+ * <p>
+ * Pools are keyed by route (scheme, host and port of the target), proxy and credentials,
+ * and are kept for the whole lifetime of the plugin class loader, i.e. for the whole Maven session
+ * or, when running in a Maven daemon, for as long as the daemon keeps the plugin loaded.
+ * This allows keep-alive connections and TLS sessions to be reused across executions and retries.
+ * Idle connections are evicted in the background.
+ */
+final class ConnectionPoolRegistry {
+    private static final int MAX_TOTAL = 64;
+    private static final int MAX_PER_ROUTE = 16;
+    private static final long EVICTION_INTERVAL_SECONDS = 5L;
+    private static final long MAX_IDLE_SECONDS = 30L;
+
+    private static final Map<Key, PoolingHttpClientConnectionManager> POOLS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ConnectionPoolRegistry::shutdown,
+                "download-maven-plugin-pool-shutdown"));
+    }
+
+    private ConnectionPoolRegistry() {
+    }
+
+    /**
+     * Returns the connection manager shared by all requests to the given route.
+     *
+     * @param uri target URI; only scheme, host and port are taken into account
+     * @param proxyHost proxy host, may be {@code null}
+     * @param proxyPort proxy port
+     * @param principal identity of the credentials used for the route, may be {@code null}
+     * @return shared connection manager, which must not be shut down by the caller
+     */
+    static HttpClientConnectionManager get(URI uri, String proxyHost, int proxyPort, String principal) {
+        return POOLS.computeIfAbsent(new Key(uri, proxyHost, proxyPort, principal), key -> {
+            final PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+            manager.setMaxTotal(MAX_TOTAL);
+            manager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+            new IdleConnectionEvictor(manager, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS,
+                    MAX_IDLE_SECONDS, TimeUnit.SECONDS).start();
+            return manager;
+        });
+    }
+
+    /**
+     * Closes all pooled connections and forgets all pools.
+     */
+    static void shutdown() {
+        POOLS.values().forEach(PoolingHttpClientConnectionManager::shutdown);
+        POOLS.clear();
+    }
+
+    private static final class Key {
+        private final String scheme;
+        private final String host;
+        private final int port;
+        private final String proxyHost;
+        private final int proxyPort;
+        private final String principal;
+
+        private Key(URI uri, String proxyHost, int proxyPort, String principal) {
+            this.scheme = uri.getScheme();
+            this.host = uri.getHost();
+            this.port = uri.getPort();
+            this.proxyHost = proxyHost;
+            this.proxyPort = proxyPort;
+            this.principal = principal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return this.port == other.port
+                    && this.proxyPort == other.proxyPort
+                    && Objects.equals(this.scheme, other.scheme)
+                    && Objects.equals(this.host, other.host)
+                    && Objects.equals(this.proxyHost, other.proxyHost)
+                    && Objects.equals(this.principal, other.principal);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.scheme, this.host, this.port, this.proxyHost, this.proxyPort, this.principal);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import java.io.File;
+import java.net.URI;
+
+/**
+ * One resource of the {@code downloads} list of the {@code wget} goal.
+ * <p>
+ * Settings which are not given fall back to the values configured for the execution,
+ * except for the checksums, which only apply to the resource they are given for.
+ *
+ * @since 1.7.1
+ */
+public class Download {
+    private URI uri;
+    private String outputFileName;
+    private File outputDirectory;
+    private String md5;
+    private String sha1;
+    private String sha256;
+    private String sha512;
+    private Boolean unpack;
+
+    public Download() {
+    }
+
+    Download(URI uri, String outputFileName, File outputDirectory, String md5, String sha1, String sha256,
+             String sha512, boolean unpack) {
+        this.uri = uri;
+        this.outputFileName = outputFileName;
+        this.outputDirectory = outputDirectory;
+        this.md5 = md5;
+        this.sha1 = sha1;
+        this.sha256 = sha256;
+        this.sha512 = sha512;
+        this.unpack = unpack;
+    }
+
+    /**
+     * Fills in the settings which were not given for this resource.
+     *
+     * @param outputDirectory directory of the execution
+     * @param unpack whether the execution unpacks archives
+     * @return this download, with all its settings
+     */
+    Download withDefaults(File outputDirectory, boolean unpack) {
+        return new Download(this.uri,
+                this.outputFileName == null ? FileNameUtils.getOutputFileName(this.uri) : this.outputFileName,
+                this.outputDirectory == null ? outputDirectory : this.outputDirectory,
+                this.md5, this.sha1, this.sha256, this.sha512,
+                this.unpack == null ? unpack : this.unpack);
+    }
+
+    /**
+     * Alias of {@code uri}, as for the execution.
+     */
+    public void setUrl(URI url) {
+        this.uri = url;
+    }
+
+    public void setUri(URI uri) {
+        this.uri = uri;
+    }
+
+    public URI getUri() {
+        return this.uri;
+    }
+
+    public String getOutputFileName() {
+        return this.outputFileName;
+    }
+
+    public File getOutputDirectory() {
+        return this.outputDirectory;
+    }
+
+    public String getMd5() {
+        return this.md5;
+    }
+
+    public String getSha1() {
+        return this.sha1;
+    }
+
+    public String getSha256() {
+        return this.sha256;
+    }
+
+    public String getSha512() {
+        return this.sha512;
+    }
+
+    public boolean isUnpack() {
+        return Boolean.TRUE.equals(this.unpack);
+    }
+
+    File getOutputFile() {
+        return new File(this.outputDirectory, this.outputFileName);
+    }
+
+    File getPartFile() {
+        return new File(this.outputDirectory, this.outputFileName + PartialDownload.PART_SUFFIX);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(this.uri);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.util.SelectorUtils;
+
+import java.util.Arrays;
+
+/**
+ * Selects the entries of an archive to extract, by their path within the archive, using Ant-style
+ * {@code includes} and {@code excludes} patterns. An entry is selected if it matches any of the includes,
+ * or if there are none, and none of the excludes.
+ * <p>
+ * Patterns apply to the entry paths as stored in the archive, before they are rewritten by file mappers.
+ * As for resources, a pattern ending with {@code /} matches everything below that directory.
+ */
+final class EntrySelector {
+    private static final String SEPARATOR = "/";
+
+    private final String[] includes;
+    private final String[] excludes;
+
+    private EntrySelector(String[] includes, String[] excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * @param includes patterns of the entries to extract, may be {@code null} or empty to extract all of them
+     * @param excludes patterns of the entries not to extract, may be {@code null}
+     * @return the selector, or {@code null} if all entries are selected
+     */
+    static EntrySelector of(String[] includes, String[] excludes) {
+        final String[] normalizedIncludes = normalize(includes);
+        final String[] normalizedExcludes = normalize(excludes);
+        if (normalizedIncludes.length == 0 && normalizedExcludes.length == 0) {
+            return null;
+        }
+        return new EntrySelector(normalizedIncludes, normalizedExcludes);
+    }
+
+    /**
+     * @param name path of the entry within the archive
+     * @return true if the entry is to be extracted
+     */
+    boolean isSelected(String name) {
+        String path = name.replace('\\', '/');
+        while (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        while (path.startsWith(SEPARATOR)) {
+            path = path.substring(1);
+        }
+        if (path.endsWith(SEPARATOR)) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return (this.includes.length == 0 || matchesAny(this.includes, path)) && !matchesAny(this.excludes, path);
+    }
+
+    /**
+     * @return the selector as a plexus {@link FileSelector}, for unarchivers which support them
+     */
+    FileSelector asFileSelector() {
+        return fileInfo -> this.isSelected(fileInfo.getName());
+    }
+
+    @Override
+    public String toString() {
+        return "includes=" + Arrays.toString(this.includes) + ", excludes=" + Arrays.toString(this.excludes);
+    }
+
+    private static boolean matchesAny(String[] patterns, String path) {
+        for (String pattern : patterns) {
+            if (SelectorUtils.matchPath(pattern, path, SEPARATOR, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] normalize(String[] patterns) {
+        if (patterns == null) {
+            return new String[0];
+        }
+        return Arrays.stream(patterns)
+                .filter(pattern -> pattern != null && !pattern.trim().isEmpty())
+                .map(pattern -> {
+                    String normalized = pattern.trim().replace('\\', '/');
+                    if (normalized.endsWith(SEPARATOR)) {
+                        normalized += "**";
+                    }
+                    return normalized;
+                })
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import org.codehaus.plexus.components.io.filemappers.FileMapper;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Record of an archive unpacked into an output directory, allowing later builds to skip both downloading
+ * and unpacking it again as long as nothing changed.
+ * <p>
+ * The record is a hidden properties file of the output directory, named after the archive. It holds what
+ * the unpacked tree depends on: the resource URI, its expected checksums, the SHA-256 of the archive when
+ * known, the configuration of the file mappers and the selected entries. It also lists each unpacked file
+ * along with its size and modification time, so that the tree can be checked for local changes.
+ */
+final class ExtractionMarker {
+    private static final String URI_KEY = "uri";
+    private static final String CHECKSUMS_KEY = "checksums";
+    private static final String MAPPERS_KEY = "mappers";
+    private static final String SELECTION_KEY = "selection";
+    private static final String DIGEST_KEY = "sha256";
+    private static final String COUNT_KEY = "files";
+    private static final String FILE_KEY_PREFIX = "file.";
+
+    private final Path file;
+    private final Path directory;
+    private final Properties identity = new Properties();
+
+    private ExtractionMarker(Path directory, String archiveName) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.file = this.directory.resolve("." + archiveName + ".unpacked");
+    }
+
+    /**
+     * @param download unpacked resource
+     * @param fileMappers configuration of the mappers of the unpacked paths, see {@link #describe}
+     * @param selector unpacked entries, may be {@code null} if all of them are
+     * @return the marker of the resource, which may not exist yet
+     */
+    static ExtractionMarker of(Download download, String fileMappers, EntrySelector selector) {
+        final ExtractionMarker marker = new ExtractionMarker(download.getOutputDirectory().toPath(),
+                download.getOutputFileName());
+        marker.identity.setProperty(URI_KEY, String.valueOf(download.getUri()));
+        marker.identity.setProperty(CHECKSUMS_KEY, String.join(",",
+                String.valueOf(download.getMd5()), String.valueOf(download.getSha1()),
+                String.valueOf(download.getSha256()), String.valueOf(download.getSha512())));
+        marker.identity.setProperty(MAPPERS_KEY, fileMappers);
+        marker.identity.setProperty(SELECTION_KEY, String.valueOf(selector));
+        return marker;
+    }
+
+    /**
+     * Tells whether the archive is unpacked with the current settings.
+     *
+     * @param verifyFiles whether to also check that each unpacked file still has the size and modification time
+     *                    it was unpacked with
+     * @return true if the archive need not be unpacked again
+     */
+    boolean isUpToDate(boolean verifyFiles) {
+        return this.matches(this.load(), verifyFiles);
+    }
+
+    /**
+     * Tells whether the archive is unpacked with the current settings, the archive itself having just been
+     * retrieved again.
+     *
+     * @param sha256 digest of the retrieved archive
+     * @param verifyFiles see {@link #isUpToDate(boolean)}
+     * @return true if the archive is the one which was unpacked, and need not be unpacked again
+     */
+    boolean isUpToDate(String sha256, boolean verifyFiles) {
+        final Properties recorded = this.load();
+        return recorded != null && sha256.equalsIgnoreCase(recorded.getProperty(DIGEST_KEY, ""))
+                && this.matches(recorded, verifyFiles);
+    }
+
+    private boolean matches(Properties recorded, boolean verifyFiles) {
+        if (recorded == null) {
+            return false;
+        }
+        for (String key : this.identity.stringPropertyNames()) {
+            if (!this.identity.getProperty(key).equals(recorded.getProperty(key))) {
+                return false;
+            }
+        }
+        return !verifyFiles || this.filesUnchanged(recorded);
+    }
+
+    /**
+     * Forgets the unpacked tree, before it is unpacked again.
+     *
+     * @throws IOException if the marker cannot be deleted
+     */
+    void invalidate() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    /**
+     * Records the unpacked tree.
+     *
+     * @param sha256 digest of the archive, may be {@code null} if unknown
+     * @param files unpacked files
+     * @throws IOException if the marker cannot be written
+     */
+    void write(String sha256, Collection<Path> files) throws IOException {
+        final Properties properties = new Properties();
+        properties.putAll(this.identity);
+        if (sha256 != null) {
+            properties.setProperty(DIGEST_KEY, sha256);
+        }
+        int count = 0;
+        for (Path path : files) {
+            final Path absolute = this.directory.resolve(path).normalize();
+            if (!Files.isRegularFile(absolute, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            final BasicFileAttributes attributes = Files.readAttributes(absolute, BasicFileAttributes.class);
+            properties.setProperty(FILE_KEY_PREFIX + count++, attributes.size() + ":"
+                    + attributes.lastModifiedTime().toMillis() + ":" + this.directory.relativize(absolute));
+        }
+        properties.setProperty(COUNT_KEY, Integer.toString(count));
+        final Path tmp = Paths.get(this.file + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, null);
+        }
+        Files.move(tmp, this.file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private Properties load() {
+        if (!Files.isRegularFile(this.file)) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(this.file)) {
+            properties.load(in);
+            return properties;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private boolean filesUnchanged(Properties recorded) {
+        try {
+            final int count = Integer.parseInt(recorded.getProperty(COUNT_KEY, "-1"));
+            if (count < 0) {
+                return false;
+            }
+            for (int i = 0; i < count; ++i) {
+                final String[] entry = recorded.getProperty(FILE_KEY_PREFIX + i, "").split(":", 3);
+                if (entry.length < 3) {
+                    return false;
+                }
+                final BasicFileAttributes attributes = Files.readAttributes(this.directory.resolve(entry[2]),
+                        BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attributes.size() != Long.parseLong(entry[0])
+                        || attributes.lastModifiedTime().toMillis() != Long.parseLong(entry[1])) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param fileMappers mappers of the unpacked paths, may be {@code null}
+     * @param configuration the {@code fileMappers} element of the execution configuration, may be {@code null}
+     *                      if unknown, in which case only the types of the mappers are described
+     * @return the configuration of the file mappers
+     */
+    static String describe(FileMapper[] fileMappers, Xpp3Dom configuration) {
+        if (fileMappers == null) {
+            return "";
+        }
+        if (configuration != null) {
+            return configuration.toString();
+        }
+        final List<String> types = new ArrayList<>();
+        for (FileMapper fileMapper : fileMappers) {
+            types.add(fileMapper.getClass().getName());
+        }
+        return String.join(";", types);
+    }
+}
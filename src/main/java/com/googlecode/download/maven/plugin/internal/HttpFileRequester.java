@@ -15,20 +15,34 @@
  */
 package com.googlecode.download.maven.plugin.internal;
 
+import com.googlecode.download.maven.plugin.internal.cache.DownloadLease;
 import com.googlecode.download.maven.plugin.internal.cache.FileBackedIndex;
+import com.googlecode.download.maven.plugin.internal.cache.FileIndexResource;
 import com.googlecode.download.maven.plugin.internal.cache.FileIndexResourceFactory;
+import com.googlecode.download.maven.plugin.internal.checksum.ChecksumVerifier;
+import com.googlecode.download.maven.plugin.internal.checksum.Checksums;
 import org.apache.http.Header;
+import org.apache.http.HeaderElement;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.NTCredentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.AuthCache;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.cache.HttpCacheContext;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.Resource;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.routing.HttpRoutePlanner;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
@@ -39,23 +53,47 @@ import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
 import org.apache.http.impl.client.cache.CachingHttpClients;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
 import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.settings.Server;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.net.ProxySelector;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.Objects.requireNonNull;
+import static org.apache.http.HttpVersion.HTTP_1_1;
 import static org.apache.maven.shared.utils.StringUtils.isNotBlank;
 
 /**
@@ -63,6 +101,16 @@ import static org.apache.maven.shared.utils.StringUtils.isNotBlank;
  */
 public class HttpFileRequester {
     public static final int HEURISTIC_DEFAULT_LIFETIME = 364 * 3600 * 24;
+    private static final long CHECKPOINT_INTERVAL = 4L * 1024 * 1024;
+    private static final Set<String> MESSAGE_FRAMING_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "content-range", "keep-alive", "transfer-encoding"));
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PIPE_SIZE = 4 * 1024 * 1024;
+    private static final ExecutorService CONSUMERS = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "download-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private ProgressReport progressReport;
     private int connectTimeout;
@@ -70,10 +118,17 @@ public class HttpFileRequester {
     private HttpRoutePlanner routePlanner;
     private CredentialsProvider credentialsProvider;
     private File cacheDir;
+    private boolean contentAddressableCache;
     private Log log;
     private boolean redirectsEnabled;
     private URI uri;
     private boolean preemptiveAuth;
+    private HttpClientConnectionManager connectionManager;
+    private int segments;
+    private long minSegmentSize;
+    private long maxLockWaitTime;
+    private Checksums checksums;
+    private OutputMode outputMode;
 
     private HttpFileRequester() {
     }
@@ -81,6 +136,7 @@ public class HttpFileRequester {
     public static class Builder {
         private ProgressReport progressReport;
         private File cacheDir;
+        private boolean contentAddressableCache;
         private int connectTimeout = 3000;
         private int socketTimeout = 3000;
         private URI uri;
@@ -97,6 +153,11 @@ public class HttpFileRequester {
         private boolean redirectsEnabled;
         private MavenSession mavenSession;
         private boolean preemptiveAuth;
+        private int segments = 1;
+        private long minSegmentSize = 8L * 1024 * 1024;
+        private long maxLockWaitTime = 30000L;
+        private OutputMode outputMode = OutputMode.COPY;
+        private Checksums checksums;
 
         public Builder withUri(URI uri) {
             this.uri = uri;
@@ -113,6 +174,14 @@ public class HttpFileRequester {
             return this;
         }
 
+        /**
+         * Stores cached files by their SHA-256, so that identical content is stored only once.
+         */
+        public Builder withContentAddressableCache(boolean contentAddressableCache) {
+            this.contentAddressableCache = contentAddressableCache;
+            return this;
+        }
+
         public Builder withConnectTimeout(int connectTimeout) {
             this.connectTimeout = connectTimeout;
             return this;
@@ -188,6 +257,49 @@ public class HttpFileRequester {
             return this;
         }
 
+        /**
+         * Sets the maximum number of byte ranges fetched concurrently. Values lower than 2 disable
+         * segmented downloads.
+         */
+        public Builder withSegments(int segments) {
+            this.segments = segments;
+            return this;
+        }
+
+        /**
+         * Sets the minimum size of a byte range; resources smaller than twice this size are downloaded
+         * over a single connection.
+         */
+        public Builder withMinSegmentSize(long minSegmentSize) {
+            this.minSegmentSize = minSegmentSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time, in milliseconds, to wait for another process downloading the same resource
+         * into the cache, after which the resource is downloaded without waiting any longer.
+         */
+        public Builder withMaxLockWaitTime(long maxLockWaitTime) {
+            this.maxLockWaitTime = maxLockWaitTime;
+            return this;
+        }
+
+        /**
+         * Sets the checksums computed while the content is written and verified once it is complete.
+         */
+        public Builder withChecksums(Checksums checksums) {
+            this.checksums = checksums;
+            return this;
+        }
+
+        /**
+         * Sets how the output file is made from a cached file, defaults to {@link OutputMode#COPY}.
+         */
+        public Builder withOutputMode(OutputMode outputMode) {
+            this.outputMode = outputMode;
+            return this;
+        }
+
         public HttpFileRequester build() throws MojoExecutionException {
             final HttpFileRequester instance = new HttpFileRequester();
             instance.uri = requireNonNull(this.uri);
@@ -195,12 +307,25 @@ public class HttpFileRequester {
             instance.connectTimeout = this.connectTimeout;
             instance.socketTimeout = this.socketTimeout;
             instance.cacheDir = this.cacheDir;
+            instance.contentAddressableCache = this.contentAddressableCache;
             instance.redirectsEnabled = this.redirectsEnabled;
             instance.preemptiveAuth = this.preemptiveAuth;
+            instance.segments = this.segments;
+            instance.minSegmentSize = Math.max(1L, this.minSegmentSize);
+            instance.maxLockWaitTime = this.maxLockWaitTime;
+            instance.outputMode = requireNonNull(this.outputMode);
+            instance.checksums = this.checksums != null
+                    ? this.checksums
+                    : new Checksums(null, null, null, null, this.log);
             instance.log = requireNonNull(this.log);
 
             requireNonNull(this.mavenSession);
 
+            instance.connectionManager = ConnectionPoolRegistry.get(this.uri,
+                    isNotBlank(this.proxyHost) ? this.proxyHost : null, this.proxyPort,
+                    String.join(":", String.valueOf(this.serverId), String.valueOf(this.username),
+                            String.valueOf(this.proxyUserName)));
+
             instance.credentialsProvider = new BasicCredentialsProvider();
             if (isNotBlank(this.serverId)) {
                 if (this.log.isDebugEnabled()) {
@@ -250,49 +375,517 @@ public class HttpFileRequester {
 
     /**
      * Downloads the resource with the given URI to the specified local file system location.
+     * The client is built over a connection pool shared by all requesters targeting the same route,
+     * so closing it after the download keeps the pooled connections alive.
+     * <p>
+     * If checksums were supplied, they are computed while the content is written and verified
+     * as soon as the transfer completes; the output file is deleted if they do not match.
+     * <p>
+     * When a cache is used, only one process at a time downloads a given URL into it: the others wait for
+     * its {@link DownloadLease} and are then served from the cache. A process which cannot get the lease
+     * within the maximum lock wait time downloads the URL without waiting any longer.
      *
      * @param outputFile the output file
      * @param headers list of headers
+     * @throws MojoFailureException if the content does not match the supplied checksums
      */
-    public void download(final File outputFile, List<Header> headers) throws IOException {
-        final CachingHttpClientBuilder httpClientBuilder = createHttpClientBuilder();
-        try (final CloseableHttpClient httpClient = httpClientBuilder.build()) {
-            final HttpCacheContext clientContext = HttpCacheContext.create();
-            clientContext.setCredentialsProvider(this.credentialsProvider);
+    public void download(final File outputFile, List<Header> headers) throws IOException, MojoFailureException {
+        this.coordinated(() -> this.transfer(outputFile, headers));
+    }
+
+    /**
+     * Streams the resource to a consumer, without writing it to a file of its own.
+     * <p>
+     * The consumer runs on a separate thread, fed through a pipe, so that it works while the content is still
+     * being received. A cached resource is streamed from the cache. Otherwise, the content is also written to
+     * the cache as it is received, if a cache is used. Checksums are verified once the whole content was
+     * received, so the consumer must be prepared to undo its work if this method fails.
+     *
+     * @param headers list of headers
+     * @param consumer consumer of the content, which does not need to read it up to its end
+     * @throws MojoFailureException if the content does not match the supplied checksums
+     */
+    public void stream(List<Header> headers, ContentConsumer consumer) throws IOException, MojoFailureException {
+        this.coordinated(() -> this.transferStream(headers, consumer));
+    }
+
+    /**
+     * Consumer of the content of a resource.
+     */
+    @FunctionalInterface
+    public interface ContentConsumer {
+        void accept(InputStream content) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Transfer {
+        void run() throws IOException, MojoFailureException;
+    }
+
+    /**
+     * Runs a transfer of a resource which is not cached yet while holding its {@link DownloadLease},
+     * or after another process added it to the cache.
+     */
+    private void coordinated(final Transfer transfer) throws IOException, MojoFailureException {
+        if (this.cacheDir == null || this.isCached()) {
+            transfer.run();
+            return;
+        }
+        try (DownloadLease lease = DownloadLease.acquire(this.cacheDir.toPath(), this.uri.toString(),
+                this.maxLockWaitTime, this.log)) {
+            if (lease == null) {
+                this.log.warn(String.format("Another build is still downloading %s after %d ms, "
+                        + "downloading it as well", this.uri, this.maxLockWaitTime));
+                transfer.run();
+                return;
+            }
+            if (!lease.waited() || !this.isCached()) {
+                transfer.run();
+                return;
+            }
+        }
+        this.log.debug("Downloaded by another build, copying from cache: " + this.uri);
+        transfer.run();
+    }
+
+    private void transferStream(List<Header> headers, ContentConsumer consumer)
+            throws IOException, MojoFailureException {
+        final ChecksumVerifier verifier = this.checksums.verifier();
+        final HttpCacheEntry cached = this.cacheDir == null
+                ? null
+                : new FileBackedIndex(this.cacheDir.toPath(), this.log).getEntry(this.cacheKey());
+        if (cached != null && cached.getResource() != null) {
+            this.log.debug("Streaming file from cache");
+            try (InputStream in = cached.getResource().getInputStream()) {
+                pipe(in, verifier, null, null, consumer);
+            }
+            verifier.verify();
+            return;
+        }
+        final HttpGet httpGet = new HttpGet(this.uri);
+        headers.forEach(httpGet::setHeader);
+        Path copy = null;
+        if (this.cacheDir != null) {
+            // the body is written to the cache as it is received
+            httpGet.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+            if (!this.cacheDir.isDirectory()) {
+                Files.createDirectories(this.cacheDir.toPath());
+            }
+            copy = Files.createTempFile(this.cacheDir.toPath(), "stream", ".tmp");
+        }
+        try (CloseableHttpClient httpClient = this.createHttpClientBuilder().build()) {
+            final Path cacheCopy = copy;
+            final Date requestDate = new Date();
+            final Header[] responseHeaders = httpClient.execute(httpGet, response -> {
+                checkStatus(response);
+                final HttpEntity entity = response.getEntity();
+                if (entity == null) {
+                    throw new IOException("No content received for " + this.uri);
+                }
+                this.progressReport.initiate(this.uri, entity.getContentLength());
+                try (InputStream in = entity.getContent();
+                     OutputStream out = cacheCopy == null ? null : Files.newOutputStream(cacheCopy)) {
+                    pipe(in, verifier, out, this.progressReport, consumer);
+                } catch (IOException ex) {
+                    this.progressReport.error(ex);
+                    throw ex;
+                }
+                this.progressReport.completed();
+                return response.getAllHeaders();
+            }, this.createContext());
+            verifier.verify();
+            if (copy != null) {
+                this.storeInCache(copy, responseHeaders, requestDate);
+            }
+        } finally {
+            if (copy != null) {
+                Files.deleteIfExists(copy);
+            }
+        }
+    }
 
-            if (this.preemptiveAuth) {
-                final AuthCache authCache = new BasicAuthCache();
-                authCache.put(new HttpHost(this.uri.getHost(), this.uri.getPort()), new BasicScheme());
-                clientContext.setAuthCache(authCache);
+    /**
+     * Feeds the content to the consumer running on another thread, while digesting it and, optionally,
+     * copying it and reporting progress. The content is read up to its end even if the consumer does not need all of it.
+     */
+    private static void pipe(InputStream in, ChecksumVerifier verifier, OutputStream copy, ProgressReport progress,
+            ContentConsumer consumer) throws IOException {
+        final PipedInputStream pipeIn = new PipedInputStream(PIPE_SIZE);
+        final PipedOutputStream pipeOut = new PipedOutputStream(pipeIn);
+        final Future<?> consuming = CONSUMERS.submit(() -> {
+            try (InputStream content = pipeIn) {
+                consumer.accept(content);
+                // the producer must not be blocked by a full pipe
+                final byte[] rest = new byte[BUFFER_SIZE];
+                while (content.read(rest) != -1) {
+                    // skipping trailing padding
+                }
             }
+            return null;
+        });
+        IOException failure = null;
+        try (OutputStream out = pipeOut) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                verifier.update(buffer, 0, read);
+                if (copy != null) {
+                    copy.write(buffer, 0, read);
+                }
+                out.write(buffer, 0, read);
+                if (progress != null) {
+                    progress.update(read);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        try {
+            consuming.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            consuming.cancel(true);
+            throw new InterruptedIOException("Interrupted while consuming " + e.getMessage());
+        } catch (ExecutionException e) {
+            // a failure of the consumer also breaks the pipe, and is the one to report
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 
+    private void transfer(final File outputFile, List<Header> headers) throws IOException, MojoFailureException {
+        if (this.placeFromCache(outputFile)) {
+            return;
+        }
+        final CachingHttpClientBuilder httpClientBuilder = createHttpClientBuilder();
+        try (final CloseableHttpClient httpClient = httpClientBuilder.build()) {
+            final boolean cached = this.isCached();
+            final PartialDownload partial = PartialDownload.load(outputFile, this.uri);
+            final ChecksumVerifier verifier = this.checksums.verifier();
+            if (!cached && partial.offset() == 0 && this.segments > 1) {
+                final Date requestDate = new Date();
+                final Header[] responseHeaders = this.downloadSegmented(httpClient, outputFile, headers);
+                if (responseHeaders != null) {
+                    // segments are written out of order, so the checksums can only be computed afterwards
+                    verifier.update(outputFile.toPath(), outputFile.length());
+                    this.verify(verifier, outputFile);
+                    if (this.cacheDir != null) {
+                        this.storeInCache(outputFile, responseHeaders, requestDate);
+                    }
+                    return;
+                }
+            }
+            final HttpCacheContext clientContext = this.createContext();
             final HttpGet httpGet = new HttpGet(this.uri);
             headers.forEach(httpGet::setHeader);
-            httpClient.execute(httpGet, response -> handleResponse(this.uri, outputFile, clientContext, response),
-                    clientContext);
+            if (!cached) {
+                if (this.cacheDir != null) {
+                    // the body is written straight to the output file, which is added to the cache once complete
+                    httpGet.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+                }
+                if (partial.offset() > 0) {
+                    this.log.info(String.format("Resuming download of %s at byte %d", this.uri, partial.offset()));
+                    httpGet.setHeader(HttpHeaders.RANGE, "bytes=" + partial.offset() + "-");
+                    httpGet.setHeader(HttpHeaders.IF_RANGE, partial.validator());
+                }
+            }
+            final Date requestDate = new Date();
+            final Header[] responseHeaders;
+            try {
+                responseHeaders = httpClient.execute(httpGet,
+                        response -> handleResponse(this.uri, outputFile, partial, verifier, clientContext, response),
+                        clientContext);
+            } catch (DownloadFailureException e) {
+                if (e.getHttpCode() != HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE || partial.offset() == 0) {
+                    throw e;
+                }
+                this.log.debug("Partial download of " + this.uri + " cannot be resumed, restarting");
+                PartialDownload.delete(outputFile);
+                this.transfer(outputFile, headers);
+                return;
+            }
+            this.verify(verifier, outputFile);
+            if (!cached && responseHeaders != null && this.cacheDir != null) {
+                this.storeInCache(outputFile, responseHeaders, requestDate);
+            }
+        }
+    }
+
+    /**
+     * Links the output file to the cached file of the resource according to the {@link OutputMode}, without
+     * streaming it through the HTTP cache, so that a cache hit costs a link rather than a copy where possible.
+     * This is only done for a link mode, and for a fresh entry: a stale entry is left to the HTTP cache, which
+     * revalidates it, and a copy is made by the HTTP cache as well. The cached file is verified rather than the
+     * output file, so that the digests recorded for it spare hashing it again on later hits.
+     *
+     * @return {@code false} if the output file is to be made by the HTTP cache
+     */
+    private boolean placeFromCache(File outputFile) throws IOException, MojoFailureException {
+        if (this.cacheDir == null || this.outputMode == OutputMode.COPY) {
+            return false;
+        }
+        final HttpCacheEntry cached = new FileBackedIndex(this.cacheDir.toPath(), this.log).getEntry(this.cacheKey());
+        if (cached == null || cached.getStatusCode() != HttpStatus.SC_OK
+                || !(cached.getResource() instanceof FileIndexResource) || !isFresh(cached, new Date())) {
+            return false;
+        }
+        final Path source = ((FileIndexResource) cached.getResource()).getFullPath();
+        if (!Files.isRegularFile(source)) {
+            return false;
+        }
+        try {
+            this.checksums.validate(source.toFile());
+        } catch (MojoFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not verify cached file " + source, e);
+        }
+        PartialDownload.delete(outputFile);
+        final OutputMode used = this.outputMode.place(source, outputFile.toPath(), this.log);
+        this.log.debug("File " + used.name().toLowerCase(Locale.ROOT) + " from cache: " + source);
+        return true;
+    }
+
+    /**
+     * Tells whether a cache entry can be used without revalidating it, as the caching client would: its age
+     * must be below its freshness lifetime, given by {@code s-maxage}, {@code max-age} or {@code Expires}, or
+     * else heuristically by a tenth of the time since it was last modified, or {@link #HEURISTIC_DEFAULT_LIFETIME}.
+     */
+    static boolean isFresh(HttpCacheEntry entry, Date now) {
+        final Date date = entry.getDate() != null ? entry.getDate() : entry.getResponseDate();
+        long maxAge = -1L;
+        long sharedMaxAge = -1L;
+        for (Header header : entry.getHeaders(HttpHeaders.CACHE_CONTROL)) {
+            for (HeaderElement element : header.getElements()) {
+                final String name = element.getName().toLowerCase(Locale.ROOT);
+                if ("no-cache".equals(name) || "no-store".equals(name)) {
+                    return false;
+                }
+                try {
+                    if ("max-age".equals(name)) {
+                        maxAge = Long.parseLong(element.getValue()) * 1000L;
+                    } else if ("s-maxage".equals(name)) {
+                        sharedMaxAge = Long.parseLong(element.getValue()) * 1000L;
+                    }
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        // the cache is a shared one
+        long lifetime = sharedMaxAge >= 0 ? sharedMaxAge : maxAge;
+        if (lifetime < 0 && entry.getFirstHeader(HttpHeaders.EXPIRES) != null) {
+            final Date expires = DateUtils.parseDate(entry.getFirstHeader(HttpHeaders.EXPIRES).getValue());
+            lifetime = expires != null ? expires.getTime() - date.getTime() : 0L;
+        }
+        if (lifetime < 0) {
+            final Header lastModifiedHeader = entry.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+            final Date lastModified = lastModifiedHeader != null ? DateUtils.parseDate(lastModifiedHeader.getValue())
+                    : null;
+            lifetime = lastModified != null
+                    ? Math.max(0L, (date.getTime() - lastModified.getTime()) / 10L)
+                    : HEURISTIC_DEFAULT_LIFETIME * 1000L;
+        }
+        long age = Math.max(0L, now.getTime() - date.getTime());
+        final Header ageHeader = entry.getFirstHeader(HttpHeaders.AGE);
+        if (ageHeader != null) {
+            try {
+                age += Long.parseLong(ageHeader.getValue().trim()) * 1000L;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return age < lifetime;
+    }
+
+    /**
+     * Verifies the computed checksums, deleting the output file if they do not match.
+     */
+    private void verify(ChecksumVerifier verifier, File outputFile) throws IOException, MojoFailureException {
+        try {
+            verifier.verify();
+        } catch (MojoFailureException e) {
+            PartialDownload.delete(outputFile);
+            throw e;
+        }
+    }
+
+    private HttpCacheContext createContext() {
+        final HttpCacheContext clientContext = HttpCacheContext.create();
+        clientContext.setCredentialsProvider(this.credentialsProvider);
+
+        if (this.preemptiveAuth) {
+            final AuthCache authCache = new BasicAuthCache();
+            authCache.put(new HttpHost(this.uri.getHost(), this.uri.getPort()), new BasicScheme());
+            clientContext.setAuthCache(authCache);
+        }
+        return clientContext;
+    }
+
+    private boolean isCached() throws NotDirectoryException {
+        return this.cacheDir != null
+                && new FileBackedIndex(this.cacheDir.toPath(), this.log).getEntry(this.cacheKey()) != null;
+    }
+
+    /**
+     * @return the key under which the caching client stores the resource, i.e. its URI with a lower case scheme
+     * and host, an explicit port and a non-empty path
+     */
+    private String cacheKey() {
+        try {
+            final URIBuilder builder = new URIBuilder(this.uri).setFragment(null);
+            if (builder.getScheme() != null) {
+                builder.setScheme(builder.getScheme().toLowerCase(Locale.ROOT));
+            }
+            if (builder.getHost() != null) {
+                builder.setHost(builder.getHost().toLowerCase(Locale.ROOT));
+            }
+            if (builder.getPort() < 0) {
+                builder.setPort("https".equals(builder.getScheme()) ? 443 : 80);
+            }
+            if (builder.getPath() == null || builder.getPath().isEmpty()) {
+                builder.setPath("/");
+            }
+            return builder.build().toASCIIString();
+        } catch (URISyntaxException e) {
+            return this.uri.toString();
+        }
+    }
+
+    /**
+     * Probes the resource and, if the server supports byte ranges and the resource is large enough,
+     * downloads it as concurrently fetched segments.
+     *
+     * @return headers of the probe if the resource was downloaded, {@code null} if it should be retrieved
+     * over a single connection
+     */
+    private Header[] downloadSegmented(CloseableHttpClient httpClient, File outputFile, List<Header> headers)
+            throws IOException {
+        final HttpHead httpHead = new HttpHead(this.uri);
+        headers.forEach(httpHead::setHeader);
+        // the probe must neither be answered from nor stored in the cache
+        httpHead.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        final Header[] responseHeaders;
+        final SegmentedDownload download;
+        try (CloseableHttpResponse response = httpClient.execute(httpHead, this.createContext())) {
+            responseHeaders = response.getAllHeaders();
+            final Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK
+                    || contentLength == null
+                    || !Optional.ofNullable(response.getFirstHeader(HttpHeaders.ACCEPT_RANGES))
+                            .map(Header::getValue)
+                            .filter("bytes"::equalsIgnoreCase)
+                            .isPresent()) {
+                download = null;
+            } else {
+                final long length = Long.parseLong(contentLength.getValue().trim());
+                final String validator = Optional.ofNullable(response.getFirstHeader(HttpHeaders.ETAG))
+                        .filter(etag -> !etag.getValue().startsWith("W/"))
+                        .map(Optional::of)
+                        .orElseGet(() -> Optional.ofNullable(response.getFirstHeader(HttpHeaders.LAST_MODIFIED)))
+                        .map(Header::getValue)
+                        .orElse(null);
+                download = length < 2 * this.minSegmentSize
+                        ? null
+                        : new SegmentedDownload(httpClient, this::createContext, this.uri, headers, validator,
+                                length, this.segments, this.minSegmentSize, this.progressReport, this.log);
+            }
+        }
+        if (download == null) {
+            this.log.debug("Server does not support byte ranges for " + this.uri + ", using a single connection");
+            return null;
+        }
+        PartialDownload.delete(outputFile);
+        download.download(outputFile);
+        return responseHeaders;
+    }
+
+    /**
+     * Adds a temporary file of the cache directory to the cache, by moving it into place.
+     *
+     * @param file complete temporary file
+     * @param responseHeaders headers of the response the file was retrieved with
+     * @param requestDate date at which the request was sent
+     */
+    private void storeInCache(Path file, Header[] responseHeaders, Date requestDate) throws IOException {
+        final Header[] entryHeaders = this.cacheEntryHeaders(responseHeaders, Files.size(file));
+        if (entryHeaders != null) {
+            this.putInCache(requestDate, entryHeaders, new FileIndexResourceFactory(this.cacheDir.toPath(),
+                    this.contentAddressableCache).adopt(this.uri.toString(), file));
+        }
+    }
+
+    /**
+     * Adds a file retrieved outside the caching client to the cache, along with the headers of the response
+     * it was retrieved with, so that the caching client serves and revalidates it as if it had stored it itself.
+     *
+     * @param file complete file
+     * @param responseHeaders headers of the response the file was retrieved with
+     * @param requestDate date at which the request was sent
+     */
+    private void storeInCache(File file, Header[] responseHeaders, Date requestDate) throws IOException {
+        final Header[] entryHeaders = this.cacheEntryHeaders(responseHeaders, file.length());
+        if (entryHeaders != null) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                this.putInCache(requestDate, entryHeaders, new FileIndexResourceFactory(this.cacheDir.toPath(),
+                        this.contentAddressableCache).generate(this.uri.toString(), in, null));
+            }
+        }
+    }
+
+    /**
+     * Determines the headers of a cache entry from those of the response its content was retrieved with.
+     *
+     * @param responseHeaders headers of the response
+     * @param length length of the content
+     * @return headers of the entry, {@code null} if the server asked not to store the response in a shared cache
+     */
+    private Header[] cacheEntryHeaders(Header[] responseHeaders, long length) {
+        if (Arrays.stream(responseHeaders)
+                .filter(header -> HttpHeaders.CACHE_CONTROL.equalsIgnoreCase(header.getName()))
+                .flatMap(header -> Arrays.stream(header.getElements()))
+                .anyMatch(element -> "no-store".equalsIgnoreCase(element.getName())
+                        || "private".equalsIgnoreCase(element.getName()))) {
+            return null;
         }
+        final List<Header> entryHeaders = Arrays.stream(responseHeaders)
+                .filter(header -> !MESSAGE_FRAMING_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT)))
+                .collect(Collectors.toList());
+        // an entry is only fresh if it is dated, and only served if its length matches the resource
+        if (entryHeaders.stream().noneMatch(header -> HttpHeaders.DATE.equalsIgnoreCase(header.getName()))) {
+            entryHeaders.add(new BasicHeader(HttpHeaders.DATE, DateUtils.formatDate(new Date())));
+        }
+        entryHeaders.add(new BasicHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(length)));
+        return entryHeaders.toArray(new Header[0]);
+    }
+
+    private void putInCache(Date requestDate, Header[] entryHeaders, Resource resource) throws IOException {
+        new FileBackedIndex(this.cacheDir.toPath(), this.log).putEntry(this.cacheKey(),
+                new HttpCacheEntry(requestDate, new Date(), new BasicStatusLine(HTTP_1_1, HttpStatus.SC_OK, "OK"),
+                        entryHeaders, resource));
     }
 
     /**
      * Handles response from the server
      * @param uri request uri
      * @param outputFile output file for the download request
+     * @param partial state of a previously interrupted download of the output file
+     * @param verifier checksums computed over the content as it is written
      * @param clientContext {@linkplain HttpCacheContext} object
      * @param response response from the server
-     * @return original response object
+     * @return headers of the response if its body was written to the output file,
+     * {@code null} if it was served by the cache
      * @throws IOException thrown if I/O operations don't succeed
      */
-    private Object handleResponse( URI uri, File outputFile, HttpCacheContext clientContext, HttpResponse response )
+    private Header[] handleResponse( URI uri, File outputFile, PartialDownload partial, ChecksumVerifier verifier,
+                                     HttpCacheContext clientContext, HttpResponse response )
             throws IOException {
-        if (response.getStatusLine().getStatusCode() >= 400) {
-            throw new DownloadFailureException(response.getStatusLine().getStatusCode(),
-                    response.getStatusLine().getReasonPhrase());
-        }
-        if (response.getStatusLine().getStatusCode() >= 301 && response.getStatusLine().getStatusCode() <= 303) {
-            throw new DownloadFailureException(response.getStatusLine().getStatusCode(),
-                    response.getStatusLine().getReasonPhrase()
-                            + ". Not downloading the resource because followRedirects is false.");
-        }
+        checkStatus(response);
         final HttpEntity entity = response.getEntity();
         if (entity != null) {
             switch ( clientContext.getCacheResponseStatus()) {
@@ -300,29 +893,96 @@ public class HttpFileRequester {
                 case CACHE_MODULE_RESPONSE:
                 case VALIDATED:
                     log.debug("Copying file from cache");
-                    Files.copy(entity.getContent(), outputFile.toPath(), REPLACE_EXISTING);
-                    break;
+                    try (InputStream in = entity.getContent();
+                         OutputStream out = Files.newOutputStream(outputFile.toPath())) {
+                        final byte[] buffer = new byte[8 * 11024];
+                        int bytesRead;
+                        while ((bytesRead = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, bytesRead);
+                            verifier.update(buffer, 0, bytesRead);
+                        }
+                    }
+                    partial.discard();
+                    return null;
                 default:
-                    progressReport.initiate( uri, entity.getContentLength());
+                    final long offset = resumeOffset(response, partial);
+                    if (offset == 0L) {
+                        partial.discard();
+                        partial.validators(headerValue(response, HttpHeaders.ETAG),
+                                headerValue(response, HttpHeaders.LAST_MODIFIED));
+                    }
+                    progressReport.initiate( uri, entity.getContentLength() < 0
+                            ? entity.getContentLength()
+                            : offset + entity.getContentLength());
+                    // the part written by a previous attempt needs to be digested as well
+                    verifier.update(outputFile.toPath(), offset);
                     byte[] tmp = new byte[8 * 11024];
-                    try (InputStream in = entity.getContent(); OutputStream out =
-                            Files.newOutputStream( outputFile.toPath())) {
+                    long written = offset;
+                    try (InputStream in = entity.getContent();
+                         FileChannel channel = FileChannel.open(outputFile.toPath(), CREATE, WRITE);
+                         OutputStream out = Channels.newOutputStream(channel.truncate(offset).position(offset))) {
+                        long checkpointed = offset;
                         int bytesRead;
                         while ((bytesRead = in.read(tmp)) != -1) {
                             out.write(tmp, 0, bytesRead);
+                            verifier.update(tmp, 0, bytesRead);
+                            written += bytesRead;
                             progressReport.update(bytesRead);
+                            if (written - checkpointed >= CHECKPOINT_INTERVAL) {
+                                partial.checkpoint(uri, written);
+                                checkpointed = written;
+                            }
                         }
                         out.flush();
                         progressReport.completed();
 
                     } catch (IOException ex) {
                         progressReport.error(ex);
+                        try {
+                            partial.checkpoint(uri, written);
+                        } catch (IOException e) {
+                            ex.addSuppressed(e);
+                        }
                         throw ex;
                     }
+                    partial.discard();
                     break;
             }
         }
-        return entity;
+        return entity != null ? response.getAllHeaders() : null;
+    }
+
+    private static void checkStatus(HttpResponse response) throws DownloadFailureException {
+        if (response.getStatusLine().getStatusCode() >= 400) {
+            throw new DownloadFailureException(response.getStatusLine().getStatusCode(),
+                    response.getStatusLine().getReasonPhrase());
+        }
+        if (response.getStatusLine().getStatusCode() >= 301 && response.getStatusLine().getStatusCode() <= 303) {
+            throw new DownloadFailureException(response.getStatusLine().getStatusCode(),
+                    response.getStatusLine().getReasonPhrase()
+                            + ". Not downloading the resource because followRedirects is false.");
+        }
+    }
+
+    /**
+     * Determines the offset at which the response body starts: the offset of the partial file
+     * if the server honored the range request, {@code 0} otherwise.
+     */
+    private static long resumeOffset(HttpResponse response, PartialDownload partial) throws IOException {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+            return 0L;
+        }
+        final String contentRange = headerValue(response, HttpHeaders.CONTENT_RANGE);
+        if (partial.offset() == 0L || contentRange == null
+                || !contentRange.trim().startsWith("bytes " + partial.offset() + "-")) {
+            partial.discard();
+            throw new IOException("Unexpected partial content: " + contentRange);
+        }
+        return partial.offset();
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        return Optional.ofNullable(response.getFirstHeader(name)).map(Header::getValue).orElse(null);
     }
 
     private CachingHttpClientBuilder createHttpClientBuilder() throws NotDirectoryException {
@@ -336,6 +996,8 @@ public class HttpFileRequester {
                         .setDefaultCredentialsProvider(this.credentialsProvider)
                         .setRoutePlanner(routePlanner)
                         .setDefaultRequestConfig(requestConfig)
+                        .setConnectionManager(this.connectionManager)
+                        .setConnectionManagerShared(true)
                 ;
         if (cacheDir != null) {
             CacheConfig config = CacheConfig.custom()
@@ -347,7 +1009,7 @@ public class HttpFileRequester {
             httpClientBuilder
                     .setCacheDir(this.cacheDir)
                     .setCacheConfig(config)
-                    .setResourceFactory(new FileIndexResourceFactory(this.cacheDir.toPath()))
+                    .setResourceFactory(new FileIndexResourceFactory(this.cacheDir.toPath(), this.contentAddressableCache))
                     .setHttpCacheStorage(new FileBackedIndex(this.cacheDir.toPath(), this.log))
                     .setDeleteCache(false);
         }
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012, Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Downloads in progress in this JVM, so that executions fetching the same resource into different
+ * output files, e.g. modules of a parallel build, transfer it only once.
+ * <p>
+ * The first execution to request a resource becomes the leader of its {@link Flight} and downloads it.
+ * Executions requesting it meanwhile follow the flight: once the leader has downloaded the file, they take
+ * their copy of it, and the leader waits for them to be done before it moves on, e.g. to unpack and delete
+ * the file. If the leader fails, or is still downloading once a follower has waited long enough,
+ * that follower downloads the resource itself.
+ */
+final class InFlightDownloads {
+
+    private static final ConcurrentMap<String, Flight> FLIGHTS = new ConcurrentHashMap<>();
+
+    private InFlightDownloads() {
+    }
+
+    /**
+     * Joins the flight of a resource, starting it if there is none.
+     * @param key Key of the resource, see {@link #key(URI, Map, String...)}.
+     * @return The flight, led by the caller if {@link Flight#isLeader()}.
+     */
+    static Flight join(final String key) {
+        while (true) {
+            final Flight flight = FLIGHTS.computeIfAbsent(key, Flight::new);
+            if (flight.board()) {
+                return flight;
+            }
+            // landed meanwhile
+            FLIGHTS.remove(key, flight);
+        }
+    }
+
+    /**
+     * Identifies the content of a request. Two requests with the same key are answered with the same content.
+     * @param uri Requested URI, normalized so that trivially different spellings match.
+     * @param headers Request headers, names being case-insensitive.
+     * @param details Anything else the content depends on, e.g. credentials or expected checksums.
+     * @return Key of the request.
+     */
+    static String key(final URI uri, final Map<String, String> headers, final String... details) {
+        final URI normalized = uri.normalize();
+        final StringBuilder key = new StringBuilder()
+            .append(normalized.getScheme() == null ? "" : normalized.getScheme().toLowerCase(Locale.ROOT))
+            .append("://")
+            .append(normalized.getHost() == null ? "" : normalized.getHost().toLowerCase(Locale.ROOT))
+            .append(':').append(normalized.getPort())
+            .append(normalized.getRawPath())
+            .append('?').append(normalized.getRawQuery());
+        final Map<String, String> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        sorted.putAll(headers);
+        sorted.forEach((name, value) -> key.append('\n').append(name.toLowerCase(Locale.ROOT)).append(": ").append(value));
+        for (final String detail : details) {
+            key.append('\n').append(detail == null ? "" : detail);
+        }
+        // keeps credentials out of memory dumps
+        return DigestUtils.sha256Hex(key.toString());
+    }
+
+    /**
+     * Download of one resource, shared by a leader and its followers.
+     */
+    static final class Flight {
+        private final String key;
+        private final Thread leader = Thread.currentThread();
+        private boolean landed;
+        private File result;
+        private int followers;
+
+        private Flight(final String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return True if the calling thread downloads the resource.
+         */
+        boolean isLeader() {
+            return this.leader == Thread.currentThread();
+        }
+
+        /**
+         * Publishes the downloaded file to the followers and waits for them to take their copy.
+         * Must be called by the leader, whether the download succeeded or not.
+         * @param file Downloaded file, or {@code null} if the download failed.
+         * @throws InterruptedIOException If interrupted while waiting for the followers.
+         */
+        synchronized void land(final File file) throws InterruptedIOException {
+            FLIGHTS.remove(this.key, this);
+            this.landed = true;
+            this.result = file;
+            this.notifyAll();
+            while (this.followers > 0) {
+                try {
+                    this.wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for executions sharing the download");
+                }
+            }
+        }
+
+        /**
+         * Waits for the leader to download the resource. The follower must then call {@link #leave()}.
+         * @param timeout Maximum time to wait, in milliseconds.
+         * @return The file downloaded by the leader, or {@code null} if it failed or is still downloading
+         *  after the timeout, see {@link #hasLanded()}.
+         * @throws InterruptedIOException If interrupted while waiting for the leader.
+         */
+        synchronized File await(final long timeout) throws InterruptedIOException {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (!this.landed) {
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0L) {
+                    return null;
+                }
+                try {
+                    this.wait(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for another execution to download");
+                }
+            }
+            return this.result;
+        }
+
+        /**
+         * @return True if the leader is done, whether it succeeded or not.
+         */
+        synchronized boolean hasLanded() {
+            return this.landed;
+        }
+
+        /**
+         * Lets the leader move on, the file it downloaded being no longer needed by this follower.
+         */
+        synchronized void leave() {
+            --this.followers;
+            this.notifyAll();
+        }
+
+        private synchronized boolean board() {
+            if (this.landed) {
+                return false;
+            }
+            if (!this.isLeader()) {
+                ++this.followers;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Streaming reader of a manifest listing resources to download, one per line, so that manifests of
+ * any length can be processed in constant memory.
+ * <p>
+ * The format is chosen by the file extension:
+ * <ul>
+ *     <li>{@code .csv}: {@code url,path,digest} columns, the last two being optional, with an optional
+ *     header line starting with {@code url};</li>
+ *     <li>{@code .jsonl}, {@code .ndjson} or {@code .json}: one flat JSON object per line, with {@code url},
+ *     {@code path} and {@code digest} (or {@code md5}, {@code sha1}, {@code sha256}, {@code sha512}) members;
+ *     the brackets and commas of a JSON array laid out one object per line are ignored;</li>
+ *     <li>anything else: whitespace separated {@code url path digest} fields.</li>
+ * </ul>
+ * Empty lines and lines starting with {@code #} are ignored. A digest is either {@code <algorithm>:<hex>},
+ * or a bare hexadecimal value whose algorithm is told by its length. A missing path defaults to the last
+ * segment of the URL.
+ */
+final class Manifest implements Closeable {
+
+    /**
+     * One resource of the manifest.
+     */
+    static final class Entry {
+        private final int line;
+        private final URI uri;
+        private final String path;
+        private final Map<String, String> digests;
+
+        Entry(final int line, final URI uri, final String path, final Map<String, String> digests) {
+            this.line = line;
+            this.uri = uri;
+            this.path = path;
+            this.digests = digests;
+        }
+
+        int line() {
+            return this.line;
+        }
+
+        URI uri() {
+            return this.uri;
+        }
+
+        /**
+         * @return Target path, relative to the output directory.
+         */
+        String path() {
+            return this.path;
+        }
+
+        /**
+         * @param algorithm Lower case algorithm name, e.g. {@code sha256}.
+         * @return Expected digest, or {@code null}.
+         */
+        String digest(final String algorithm) {
+            return this.digests.get(algorithm);
+        }
+
+        /**
+         * @return Identity of the entry in a result file: the same resource with the same expected content.
+         */
+        String key() {
+            return this.uri + "\t" + this.path + "\t" + new TreeMap<>(this.digests);
+        }
+    }
+
+    /**
+     * Result file of a manifest, holding one JSON object per processed entry:
+     * {@code {"line":..,"url":..,"path":..,"status":..,"message":..,"key":..}}. It is appended to as entries
+     * complete, so that an interrupted run can be resumed by skipping the entries it already completed.
+     * Once a run finishes, the file is compacted to the latest outcome of each entry, so that it does not grow
+     * with every run resuming the previous one.
+     */
+    static final class Result implements Closeable {
+        static final String DOWNLOADED = "downloaded";
+        static final String VERIFIED = "verified";
+        static final String FAILED = "failed";
+
+        private final BufferedWriter writer;
+
+        Result(final File file) throws IOException {
+            final File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                Files.createDirectories(parent.toPath());
+            }
+            this.writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        /**
+         * Reads the keys of the entries a previous run completed.
+         * @param file Result file, which may not exist.
+         * @return Keys of the completed entries, see {@link Entry#key()}.
+         * @throws IOException If the result file cannot be read.
+         */
+        static Set<String> completed(final File file) throws IOException {
+            final Set<String> keys = new HashSet<>();
+            if (!file.isFile()) {
+                return keys;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    final Map<String, String> members;
+                    try {
+                        members = parseObject(text);
+                    } catch (final IllegalArgumentException e) {
+                        // torn last line of an interrupted run
+                        continue;
+                    }
+                    if (FAILED.equals(members.get("status"))) {
+                        keys.remove(members.get("key"));
+                    } else if (members.containsKey("key")) {
+                        keys.add(members.get("key"));
+                    }
+                }
+            }
+            return keys;
+        }
+
+        /**
+         * Rewrites a result file with the latest outcome of each entry only, in the order of those outcomes.
+         * The latest line of each entry is held in memory meanwhile.
+         * @param file Result file, which may not exist.
+         * @throws IOException If the result file cannot be read or replaced.
+         */
+        static void compact(final File file) throws IOException {
+            if (!file.isFile()) {
+                return;
+            }
+            final Map<String, String> latest = new LinkedHashMap<>();
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    final String key;
+                    try {
+                        key = parseObject(text).get("key");
+                    } catch (final IllegalArgumentException e) {
+                        // torn last line of an interrupted run
+                        continue;
+                    }
+                    if (key != null) {
+                        latest.remove(key);
+                        latest.put(key, text);
+                    }
+                }
+            }
+            final Path tmp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(),
+                file.getName(), ".tmp");
+            try {
+                Files.write(tmp, latest.values(), StandardCharsets.UTF_8);
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        /**
+         * Appends the outcome of an entry.
+         * @param entry Processed entry.
+         * @param status One of {@link #DOWNLOADED}, {@link #VERIFIED} or {@link #FAILED}.
+         * @param message Failure message, or {@code null}.
+         * @throws IOException If the result file cannot be written.
+         */
+        synchronized void record(final Entry entry, final String status, final String message) throws IOException {
+            final StringBuilder json = new StringBuilder("{\"line\":").append(entry.line());
+            member(json, "url", entry.uri().toString());
+            member(json, "path", entry.path());
+            member(json, "status", status);
+            if (message != null) {
+                member(json, "message", message);
+            }
+            member(json, "key", entry.key());
+            this.writer.write(json.append('}').toString());
+            this.writer.newLine();
+            this.writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.writer.close();
+        }
+
+        private static void member(final StringBuilder json, final String name, final String value) {
+            json.append(",\"").append(name).append("\":\"");
+            for (int i = 0; i < value.length(); ++i) {
+                final char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append('"');
+        }
+    }
+
+    private enum Format { TEXT, CSV, JSON }
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final File file;
+    private int line;
+
+    Manifest(final File file) throws IOException {
+        this.file = file;
+        this.reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+        final String name = file.getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            this.format = Format.CSV;
+        } else if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            this.format = Format.JSON;
+        } else {
+            this.format = Format.TEXT;
+        }
+    }
+
+    /**
+     * @return The next entry, or {@code null} at the end of the manifest.
+     * @throws IOException If the manifest cannot be read or holds an invalid line.
+     */
+    Entry next() throws IOException {
+        String text;
+        while ((text = this.reader.readLine()) != null) {
+            ++this.line;
+            text = text.trim();
+            if (this.format == Format.JSON) {
+                text = stripArraySyntax(text);
+            }
+            if (text.isEmpty() || text.startsWith("#")) {
+                continue;
+            }
+            if (this.format == Format.CSV && this.line == 1 && text.toLowerCase(Locale.ROOT).startsWith("url")) {
+                continue;
+            }
+            try {
+                return this.parse(text);
+            } catch (final IllegalArgumentException e) {
+                throw new IOException(String.format("%s:%d: %s", this.file, this.line, e.getMessage()), e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    private Entry parse(final String text) {
+        final Map<String, String> digests = new HashMap<>();
+        final String url;
+        String path = null;
+        if (this.format == Format.JSON) {
+            final Map<String, String> members = parseObject(text);
+            url = members.containsKey("url") ? members.get("url") : members.get("uri");
+            path = members.get("path");
+            if (members.containsKey("digest")) {
+                addDigest(digests, members.get("digest"));
+            }
+            for (final String algorithm : new String[]{"md5", "sha1", "sha256", "sha512"}) {
+                if (members.containsKey(algorithm)) {
+                    digests.put(algorithm, members.get(algorithm).toLowerCase(Locale.ROOT));
+                }
+            }
+        } else {
+            final List<String> fields = this.format == Format.CSV ? splitCsv(text) : splitWhitespace(text);
+            url = fields.get(0);
+            if (fields.size() > 1 && !fields.get(1).isEmpty()) {
+                path = fields.get(1);
+            }
+            if (fields.size() > 2 && !fields.get(2).isEmpty()) {
+                addDigest(digests, fields.get(2));
+            }
+        }
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("missing url");
+        }
+        final URI uri = URI.create(url);
+        if (path == null) {
+            path = FileNameUtils.getOutputFileName(uri);
+        }
+        return new Entry(this.line, uri, path, digests);
+    }
+
+    private static void addDigest(final Map<String, String> digests, final String digest) {
+        final int colon = digest.indexOf(':');
+        if (colon > 0) {
+            digests.put(digest.substring(0, colon).toLowerCase(Locale.ROOT).replace("-", ""),
+                digest.substring(colon + 1).trim().toLowerCase(Locale.ROOT));
+            return;
+        }
+        final String algorithm;
+        switch (digest.length()) {
+            case 32:
+                algorithm = "md5";
+                break;
+            case 40:
+                algorithm = "sha1";
+                break;
+            case 64:
+                algorithm = "sha256";
+                break;
+            case 128:
+                algorithm = "sha512";
+                break;
+            default:
+                throw new IllegalArgumentException("cannot tell the algorithm of digest " + digest);
+        }
+        digests.put(algorithm, digest.toLowerCase(Locale.ROOT));
+    }
+
+    private static String stripArraySyntax(final String text) {
+        String stripped = text;
+        if (stripped.startsWith("[")) {
+            stripped = stripped.substring(1).trim();
+        }
+        if (stripped.endsWith("]")) {
+            stripped = stripped.substring(0, stripped.length() - 1).trim();
+        }
+        if (stripped.endsWith(",")) {
+            stripped = stripped.substring(0, stripped.length() - 1).trim();
+        }
+        return stripped;
+    }
+
+    private static List<String> splitWhitespace(final String text) {
+        final List<String> fields = new ArrayList<>();
+        for (final String field : text.split("\\s+")) {
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    private static List<String> splitCsv(final String text) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    ++i;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /**
+     * Parses a flat JSON object whose members are strings, numbers, booleans or {@code null}.
+     */
+    private static Map<String, String> parseObject(final String text) {
+        final Map<String, String> members = new HashMap<>();
+        final int[] pos = {skipSpaces(text, 0)};
+        expect(text, pos, '{');
+        if (peek(text, pos) == '}') {
+            return members;
+        }
+        while (true) {
+            final String name = parseString(text, pos);
+            expect(text, pos, ':');
+            final String value;
+            if (peek(text, pos) == '"') {
+                value = parseString(text, pos);
+            } else {
+                final int start = pos[0];
+                while (pos[0] < text.length() && ",} \t".indexOf(text.charAt(pos[0])) < 0) {
+                    ++pos[0];
+                }
+                final String literal = text.substring(start, pos[0]);
+                value = "null".equals(literal) ? null : literal;
+            }
+            if (value != null) {
+                members.put(name, value);
+            }
+            pos[0] = skipSpaces(text, pos[0]);
+            if (peek(text, pos) == ',') {
+                ++pos[0];
+                continue;
+            }
+            expect(text, pos, '}');
+            return members;
+        }
+    }
+
+    private static String parseString(final String text, final int[] pos) {
+        expect(text, pos, '"');
+        final StringBuilder value = new StringBuilder();
+        while (pos[0] < text.length()) {
+            final char c = text.charAt(pos[0]++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos[0] >= text.length()) {
+                break;
+            }
+            final char escaped = text.charAt(pos[0]++);
+            switch (escaped) {
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'u':
+                    if (pos[0] + 4 > text.length()) {
+                        throw new IllegalArgumentException("invalid escape sequence");
+                    }
+                    value.append((char) Integer.parseInt(text.substring(pos[0], pos[0] + 4), 16));
+                    pos[0] += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+
+    private static char peek(final String text, final int[] pos) {
+        pos[0] = skipSpaces(text, pos[0]);
+        if (pos[0] >= text.length()) {
+            throw new IllegalArgumentException("unexpected end of line");
+        }
+        return text.charAt(pos[0]);
+    }
+
+    private static void expect(final String text, final int[] pos, final char expected) {
+        if (peek(text, pos) != expected) {
+            throw new IllegalArgumentException(String.format("expected '%c' at column %d", expected, pos[0] + 1));
+        }
+        ++pos[0];
+    }
+
+    private static int skipSpaces(final String text, final int from) {
+        int pos = from;
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            ++pos;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * How an output file is made from a file already on disk, e.g. in the cache or the local repository.
+ * <p>
+ * Links make the output appear in constant time, whatever its size, but share the content with their source:
+ * a linked output must not be modified in place, and a symbolic link breaks once its source is evicted.
+ * Where a link cannot be created, e.g. across file systems, the content is copied instead.
+ */
+public enum OutputMode {
+    /**
+     * Copies the content from channel to channel, so that it does not go through the Java heap.
+     */
+    COPY,
+    /**
+     * Hard links the output to its source.
+     */
+    HARDLINK,
+    /**
+     * Makes the output a symbolic link to the absolute path of its source.
+     */
+    SYMLINK;
+
+    /**
+     * @param name name of the mode, case insensitive
+     * @return the mode
+     * @throws IllegalArgumentException if there is no such mode
+     */
+    public static OutputMode of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Unknown output mode " + name + ", expected one of "
+                    + Arrays.toString(values()).toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Makes the target a link to, or a copy of, the source, replacing it if it exists.
+     *
+     * @param source existing file
+     * @param target file to create
+     * @param log logger
+     * @return the mode actually used, {@link #COPY} if a link could not be created
+     * @throws IOException if the target can neither be linked nor copied
+     */
+    public OutputMode place(Path source, Path target, Log log) throws IOException {
+        // never written through, as a previous output may be a link to the source
+        Files.deleteIfExists(target);
+        if (this == HARDLINK || this == SYMLINK) {
+            try {
+                if (this == HARDLINK) {
+                    Files.createLink(target, source);
+                } else {
+                    Files.createSymbolicLink(target, source.toAbsolutePath());
+                }
+                return this;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                log.debug("Could not link " + target + " to " + source + ", copying it: " + e.getMessage());
+            }
+        }
+        transfer(source, target);
+        return COPY;
+    }
+
+    /**
+     * Copies a file channel to channel, so that the kernel moves the content without it going through
+     * the Java heap.
+     */
+    private static void transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, READ);
+             FileChannel out = FileChannel.open(target, CREATE_NEW, WRITE)) {
+            final long size = in.size();
+            long position = 0L;
+            while (position < size) {
+                final long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0L) {
+                    // the source shrank meanwhile
+                    throw new IOException("Could only copy " + position + " of " + size + " bytes of " + source
+                            + " to " + target);
+                }
+                position += transferred;
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Sidecar state of a partially downloaded file, allowing an interrupted download to be resumed
+ * with a {@code Range} request instead of restarting from the first byte.
+ * <p>
+ * The state is kept in a small properties file next to the partial file and holds the resource URI,
+ * its validators ({@code ETag} and {@code Last-Modified}) and the number of bytes safely written.
+ */
+final class PartialDownload {
+    /**
+     * Suffix appended to the name of a file while it is being downloaded.
+     */
+    static final String PART_SUFFIX = ".part";
+
+    private static final String STATE_SUFFIX = ".properties";
+    private static final String URI_KEY = "uri";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+    private static final String OFFSET_KEY = "offset";
+
+    private final Path file;
+    private final Path stateFile;
+    private String etag;
+    private String lastModified;
+    private long offset;
+
+    private PartialDownload(Path file) {
+        this.file = file;
+        this.stateFile = Paths.get(file + STATE_SUFFIX);
+    }
+
+    /**
+     * Loads the state of the given partial file for the given resource. If there is no usable state,
+     * the returned instance has an offset of {@code 0}.
+     *
+     * @param file partial file
+     * @param uri resource being downloaded
+     * @return state of the partial file
+     */
+    static PartialDownload load(File file, URI uri) {
+        final PartialDownload state = new PartialDownload(file.toPath());
+        if (Files.isRegularFile(state.stateFile) && Files.isRegularFile(state.file)) {
+            final Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(state.stateFile)) {
+                properties.load(in);
+                final long offset = Long.parseLong(properties.getProperty(OFFSET_KEY, "0"));
+                if (uri.toString().equals(properties.getProperty(URI_KEY))
+                        && offset > 0 && offset <= Files.size(state.file)) {
+                    state.etag = properties.getProperty(ETAG_KEY);
+                    state.lastModified = properties.getProperty(LAST_MODIFIED_KEY);
+                    state.offset = state.validator() != null ? offset : 0L;
+                }
+            } catch (IOException | NumberFormatException e) {
+                state.offset = 0L;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return number of bytes which can be kept, {@code 0} if the download must restart from scratch
+     */
+    long offset() {
+        return this.offset;
+    }
+
+    /**
+     * @return value for the {@code If-Range} header: a strong entity tag if known, the last modification
+     * date otherwise, or {@code null} if the resource cannot be safely resumed
+     */
+    String validator() {
+        if (this.etag != null && !this.etag.startsWith("W/")) {
+            return this.etag;
+        }
+        return this.lastModified;
+    }
+
+    /**
+     * Records the validators of the response being written to the partial file.
+     *
+     * @param etag entity tag of the response, may be {@code null}
+     * @param lastModified last modification date of the response, may be {@code null}
+     */
+    void validators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Persists the number of bytes safely written to the partial file. Nothing is persisted if the resource
+     * has no validator, as it could not be resumed safely.
+     *
+     * @param uri resource being downloaded
+     * @param offset number of bytes written
+     * @throws IOException if the state cannot be written
+     */
+    void checkpoint(URI uri, long offset) throws IOException {
+        this.offset = offset;
+        if (this.validator() == null) {
+            this.discard();
+            return;
+        }
+        final Properties properties = new Properties();
+        properties.setProperty(URI_KEY, uri.toString());
+        properties.setProperty(OFFSET_KEY, Long.toString(offset));
+        if (this.etag != null) {
+            properties.setProperty(ETAG_KEY, this.etag);
+        }
+        if (this.lastModified != null) {
+            properties.setProperty(LAST_MODIFIED_KEY, this.lastModified);
+        }
+        final Path tmp = Paths.get(this.stateFile + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, null);
+        }
+        Files.move(tmp, this.stateFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Forgets the state, so that the next download restarts from scratch.
+     *
+     * @throws IOException if the state cannot be deleted
+     */
+    void discard() throws IOException {
+        this.offset = 0L;
+        Files.deleteIfExists(this.stateFile);
+    }
+
+    /**
+     * Removes both the partial file and its state.
+     *
+     * @param file partial file
+     * @throws IOException if any of the files cannot be deleted
+     */
+    static void delete(File file) throws IOException {
+        new PartialDownload(file.toPath()).discard();
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Downloads a resource as a number of byte ranges fetched concurrently into a preallocated file.
+ * <p>
+ * The download starts with two connections. Each time a range completes, the aggregated throughput is measured,
+ * and another connection is opened as long as the previous one improved the throughput noticeably,
+ * up to the configured maximum number of segments.
+ */
+final class SegmentedDownload {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_SEGMENTS = 2;
+    private static final int RANGES_PER_SEGMENT = 4;
+    private static final double MIN_THROUGHPUT_GAIN = 1.1;
+
+    private final CloseableHttpClient httpClient;
+    private final Supplier<HttpContext> contextSupplier;
+    private final URI uri;
+    private final List<Header> headers;
+    private final String validator;
+    private final long length;
+    private final int maxSegments;
+    private final long rangeSize;
+    private final ProgressReport progressReport;
+    private final Log log;
+
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong transferred = new AtomicLong();
+    private final AtomicBoolean failed = new AtomicBoolean();
+    private final List<Future<?>> workers = new ArrayList<>();
+    private long startTime;
+    private double lastThroughput;
+    private boolean growing = true;
+
+    /**
+     * @param httpClient client used for range requests
+     * @param contextSupplier supplies a fresh context for each range request
+     * @param uri resource to download
+     * @param headers additional headers sent with each range request
+     * @param validator entity tag or last modification date sent as {@code If-Range}, may be {@code null}
+     * @param length total length of the resource
+     * @param maxSegments maximum number of concurrent connections
+     * @param minSegmentSize minimum size of a single range
+     * @param progressReport progress report
+     * @param log logger
+     */
+    SegmentedDownload(CloseableHttpClient httpClient, Supplier<HttpContext> contextSupplier, URI uri,
+                      List<Header> headers, String validator, long length, int maxSegments, long minSegmentSize,
+                      ProgressReport progressReport, Log log) {
+        this.httpClient = httpClient;
+        this.contextSupplier = contextSupplier;
+        this.uri = uri;
+        this.headers = headers;
+        this.validator = validator;
+        this.length = length;
+        this.maxSegments = maxSegments;
+        this.rangeSize = Math.max(minSegmentSize, (length + (long) maxSegments * RANGES_PER_SEGMENT - 1)
+                / ((long) maxSegments * RANGES_PER_SEGMENT));
+        this.progressReport = progressReport;
+        this.log = log;
+    }
+
+    /**
+     * Downloads the resource into the given file, replacing its content.
+     *
+     * @param outputFile output file
+     * @throws IOException if any of the ranges cannot be retrieved
+     */
+    void download(File outputFile) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(this.maxSegments, runnable -> {
+            final Thread thread = new Thread(runnable, "download-segment");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (RandomAccessFile file = new RandomAccessFile(outputFile, "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(this.length);
+            this.progressReport.initiate(this.uri, this.length);
+            this.startTime = System.nanoTime();
+            synchronized (this.workers) {
+                for (int i = 0; i < Math.min(INITIAL_SEGMENTS, this.maxSegments); ++i) {
+                    this.workers.add(executor.submit(() -> this.work(channel, executor)));
+                }
+            }
+            for (int i = 0; ; ++i) {
+                final Future<?> worker;
+                synchronized (this.workers) {
+                    if (i >= this.workers.size()) {
+                        break;
+                    }
+                    worker = this.workers.get(i);
+                }
+                worker.get();
+            }
+            if (this.log.isDebugEnabled()) {
+                this.log.debug(String.format("Downloaded %s using %d segments", this.uri, this.workers.size()));
+            }
+            this.progressReport.completed();
+        } catch (ExecutionException e) {
+            final IOException cause = e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+            this.progressReport.error(cause);
+            throw cause;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Segmented download interrupted");
+        } finally {
+            this.failed.set(true);
+            executor.shutdownNow();
+        }
+    }
+
+    private Void work(FileChannel channel, ExecutorService executor) throws IOException {
+        try {
+            for (long start = this.cursor.getAndAdd(this.rangeSize);
+                 start < this.length && !this.failed.get();
+                 start = this.cursor.getAndAdd(this.rangeSize)) {
+                this.fetch(channel, start, Math.min(start + this.rangeSize, this.length) - 1);
+                this.adapt(channel, executor);
+            }
+            return null;
+        } catch (IOException | RuntimeException e) {
+            this.failed.set(true);
+            throw e;
+        }
+    }
+
+    private void fetch(FileChannel channel, long first, long last) throws IOException {
+        final HttpGet httpGet = new HttpGet(this.uri);
+        this.headers.forEach(httpGet::setHeader);
+        httpGet.setHeader(HttpHeaders.RANGE, "bytes=" + first + "-" + last);
+        if (this.validator != null) {
+            httpGet.setHeader(HttpHeaders.IF_RANGE, this.validator);
+        }
+        this.httpClient.execute(httpGet, response -> {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new DownloadFailureException(response.getStatusLine().getStatusCode(),
+                        response.getStatusLine().getReasonPhrase()
+                                + ". The resource did not honor the range request, it may have changed.");
+            }
+            final HttpEntity entity = response.getEntity();
+            final byte[] tmp = new byte[BUFFER_SIZE];
+            long position = first;
+            try (InputStream in = entity.getContent()) {
+                int bytesRead;
+                while (position <= last && !this.failed.get() && (bytesRead = in.read(tmp)) != -1) {
+                    final int count = (int) Math.min(bytesRead, last - position + 1);
+                    final ByteBuffer buffer = ByteBuffer.wrap(tmp, 0, count);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    this.transferred.addAndGet(count);
+                    synchronized (this.progressReport) {
+                        this.progressReport.update(count);
+                    }
+                }
+            }
+            if (position <= last && !this.failed.get()) {
+                throw new IOException(String.format("Premature end of range %d-%d of %s", first, last, this.uri));
+            }
+            return null;
+        }, this.contextSupplier.get());
+    }
+
+    /**
+     * Opens another connection if the last one improved the measured throughput and ranges are still pending.
+     */
+    private void adapt(FileChannel channel, ExecutorService executor) {
+        synchronized (this.workers) {
+            if (!this.growing || this.workers.size() >= this.maxSegments
+                    || this.length - this.cursor.get() < this.rangeSize * this.workers.size()) {
+                return;
+            }
+            final double elapsed = (System.nanoTime() - this.startTime) / 1e9;
+            final double throughput = this.transferred.get() / Math.max(elapsed, 1e-3);
+            if (throughput < this.lastThroughput * MIN_THROUGHPUT_GAIN) {
+                this.growing = false;
+                return;
+            }
+            this.lastThroughput = throughput;
+            this.workers.add(executor.submit(() -> this.work(channel, executor)));
+        }
+    }
+}
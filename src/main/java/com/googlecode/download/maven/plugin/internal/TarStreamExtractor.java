@@ -0,0 +1,324 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.components.io.filemappers.FileMapper;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Extracts a possibly compressed tar archive from a stream, so that the archive does not need to be
+ * written to a file and read again.
+ * <p>
+ * Entries not selected are skipped without being written, and the other ones are extracted as they are read,
+ * with their paths rewritten by the configured {@link FileMapper}s, existing files being overwritten. Entries
+ * whose path would end up outside of the destination directory are rejected, including through symbolic links:
+ * paths are checked against the real path of the destination, and the symbolic links of the archive are only
+ * created once all its files are written, each of them checked again once they all exist, since a link may be
+ * redirected by another one.
+ */
+final class TarStreamExtractor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private enum Compression { NONE, GZIP, XZ, BZIP2 }
+
+    private final Compression compression;
+    private final Path destination;
+    private final FileMapper[] fileMappers;
+    private final EntrySelector selector;
+    private final Log log;
+    private final List<Path> created = Collections.synchronizedList(new ArrayList<>());
+    private final List<Path> extracted = Collections.synchronizedList(new ArrayList<>());
+
+    private TarStreamExtractor(Compression compression, File destination, FileMapper[] fileMappers,
+                               EntrySelector selector, Log log) {
+        this.compression = compression;
+        this.destination = destination.toPath().toAbsolutePath().normalize();
+        this.fileMappers = fileMappers;
+        this.selector = selector;
+        this.log = log;
+    }
+
+    /**
+     * @param fileName name of the archive, telling its format
+     * @param destination directory to extract the archive into
+     * @param fileMappers mappers of the entry paths, may be {@code null}
+     * @param selector entries to extract, may be {@code null} to extract all of them
+     * @param log logger
+     * @return the extractor, or {@code null} if the file name is not the one of a tar archive
+     */
+    static TarStreamExtractor forFile(String fileName, File destination, FileMapper[] fileMappers,
+                                      EntrySelector selector, Log log) {
+        final String name = fileName.toLowerCase(Locale.ROOT);
+        final Compression compression;
+        if (name.endsWith(".tar")) {
+            compression = Compression.NONE;
+        } else if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            compression = Compression.GZIP;
+        } else if (name.endsWith(".tar.xz") || name.endsWith(".txz")) {
+            compression = Compression.XZ;
+        } else if (name.endsWith(".tar.bz2") || name.endsWith(".tbz2") || name.endsWith(".tbz")) {
+            compression = Compression.BZIP2;
+        } else {
+            return null;
+        }
+        return new TarStreamExtractor(compression, destination, fileMappers, selector, log);
+    }
+
+    /**
+     * Extracts the archive read from the stream. The stream is not read beyond the end of the archive.
+     *
+     * @param in archive content
+     * @throws IOException if the archive is invalid or cannot be extracted
+     */
+    void extract(InputStream in) throws IOException {
+        final long start = System.nanoTime();
+        int count = 0;
+        final TarArchiveInputStream tar = new TarArchiveInputStream(this.decompress(new BufferedInputStream(in,
+                BUFFER_SIZE)));
+        this.createDirectories(this.destination);
+        final Path realDestination = this.destination.toRealPath();
+        final Map<Path, Path> links = new LinkedHashMap<>();
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextTarEntry()) != null) {
+            if (this.selector != null && !this.selector.isSelected(entry.getName())) {
+                // the body is skipped by the next call, without being written
+                continue;
+            }
+            final Path target = this.target(entry.getName());
+            if (target == null) {
+                continue;
+            }
+            if (entry.isDirectory()) {
+                this.checkInDestination(entry.getName(), target, realDestination);
+                this.createDirectories(target);
+            } else if (entry.isSymbolicLink()) {
+                // created last, so that no file of the archive is written through a link of the archive
+                links.put(target, Paths.get(entry.getLinkName()));
+            } else if (entry.isLink()) {
+                final Path linked = this.target(entry.getLinkName());
+                if (linked == null || !Files.exists(linked, LinkOption.NOFOLLOW_LINKS)) {
+                    this.log.debug("Skipping link " + entry.getName() + " to an entry which was not extracted");
+                    continue;
+                }
+                this.checkInDestination(entry.getLinkName(), linked, realDestination);
+                this.checkInDestination(entry.getName(), target.getParent(), realDestination);
+                this.createDirectories(target.getParent());
+                Files.deleteIfExists(target);
+                try {
+                    Files.createLink(target, linked);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(linked, target);
+                }
+                this.created.add(target);
+            } else if (entry.isFile()) {
+                this.checkInDestination(entry.getName(), target.getParent(), realDestination);
+                this.createDirectories(target.getParent());
+                Files.copy(tar, target, REPLACE_EXISTING);
+                this.created.add(target);
+                setMode(target, entry.getMode());
+                Files.setLastModifiedTime(target, FileTime.fromMillis(entry.getModTime().getTime()));
+            } else {
+                this.log.debug("Skipping special tar entry " + entry.getName());
+                continue;
+            }
+            if (!entry.isDirectory()) {
+                this.extracted.add(target);
+            }
+            ++count;
+        }
+        this.createLinks(links, realDestination);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        this.log.info(String.format("Extracted %d entries into %s in %.1fs", count, this.destination, seconds));
+    }
+
+    /**
+     * Creates the symbolic links of the archive, once its files are written.
+     *
+     * @param links targets of the links, by path of the link
+     * @param realDestination real path of the destination directory
+     * @throws IOException if a link points outside of the destination directory
+     */
+    private void createLinks(Map<Path, Path> links, Path realDestination) throws IOException {
+        for (Map.Entry<Path, Path> link : links.entrySet()) {
+            final Path target = link.getKey();
+            this.checkInDestination(this.destination.relativize(target).toString(), target.getParent(),
+                    realDestination);
+            this.checkLink(target, link.getValue(), realDestination);
+            this.createDirectories(target.getParent());
+            Files.deleteIfExists(target);
+            Files.createSymbolicLink(target, link.getValue());
+            this.created.add(target);
+        }
+        // a link may point through a link created after it
+        for (Path target : links.keySet()) {
+            this.checkLink(target, Files.readSymbolicLink(target), realDestination);
+        }
+    }
+
+    private void checkLink(Path target, Path link, Path realDestination) throws IOException {
+        if (!realPath(realPath(target.getParent()).resolve(link)).startsWith(realDestination)) {
+            throw new IOException("Link " + this.destination.relativize(target)
+                    + " points outside of the target directory " + this.destination);
+        }
+    }
+
+    /**
+     * Checks that a path is in the destination directory once the symbolic links leading to it are resolved.
+     */
+    private void checkInDestination(String entryName, Path path, Path realDestination) throws IOException {
+        if (!realPath(path).startsWith(realDestination)) {
+            throw new IOException("Entry " + entryName + " is outside of the target directory " + this.destination);
+        }
+    }
+
+    /**
+     * Resolves a path name by name, following the symbolic links met along the way, up to the first name
+     * which does not exist yet.
+     *
+     * @return the real path of the longest existing part of the path, followed by the rest of the path
+     */
+    static Path realPath(Path path) throws IOException {
+        final Path absolute = path.toAbsolutePath();
+        Path real = absolute.getRoot();
+        for (Path name : absolute) {
+            if ("..".equals(name.toString())) {
+                real = real.getParent() != null ? real.getParent() : real;
+                continue;
+            }
+            final Path next = real.resolve(name);
+            // a dangling link fails to resolve, as it cannot be told where it will lead
+            real = Files.exists(next, LinkOption.NOFOLLOW_LINKS) ? next.toRealPath() : next;
+        }
+        return real;
+    }
+
+    /**
+     * @return the files and links extracted so far
+     */
+    List<Path> extracted() {
+        synchronized (this.extracted) {
+            return new ArrayList<>(this.extracted);
+        }
+    }
+
+    /**
+     * Deletes the files extracted so far, after a failure.
+     */
+    void rollback() {
+        synchronized (this.created) {
+            for (int i = this.created.size() - 1; i >= 0; --i) {
+                try {
+                    Files.deleteIfExists(this.created.get(i));
+                } catch (IOException e) {
+                    // a directory which is not empty is left in place
+                }
+            }
+            this.created.clear();
+            this.extracted.clear();
+        }
+    }
+
+    private InputStream decompress(InputStream in) throws IOException {
+        switch (this.compression) {
+            case GZIP:
+                return new GzipCompressorInputStream(in, true);
+            case XZ:
+                return new XZCompressorInputStream(in);
+            case BZIP2:
+                return new BZip2CompressorInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * @return where an entry is extracted, or {@code null} if it is mapped to nothing
+     */
+    private Path target(String entryName) throws IOException {
+        String name = entryName;
+        if (this.fileMappers != null) {
+            for (FileMapper fileMapper : this.fileMappers) {
+                name = fileMapper.getMappedFileName(name);
+            }
+        }
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        final Path target = this.destination.resolve(name).normalize();
+        if (!target.startsWith(this.destination)) {
+            throw new IOException("Entry " + entryName + " is outside of the target directory " + this.destination);
+        }
+        return target;
+    }
+
+    private void createDirectories(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        this.createDirectories(directory.getParent());
+        Files.createDirectories(directory);
+        this.created.add(directory);
+    }
+
+    /**
+     * Applies the permission bits of an archive entry, on file systems supporting them.
+     */
+    static void setMode(Path file, int mode) throws IOException {
+        final PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        if (view == null || mode == 0) {
+            return;
+        }
+        final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        final PosixFilePermission[] bits = {
+            PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+            PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+            PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ
+        };
+        for (int bit = 0; bit < bits.length; ++bit) {
+            if ((mode & (1 << bit)) != 0) {
+                permissions.add(bits[bit]);
+            }
+        }
+        view.setPermissions(permissions);
+    }
+}
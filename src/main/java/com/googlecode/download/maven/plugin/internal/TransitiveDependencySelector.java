@@ -0,0 +1,203 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import org.codehaus.plexus.util.SelectorUtils;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.collection.DependencyCollectionContext;
+import org.eclipse.aether.collection.DependencySelector;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Selects the dependencies to collect below the requested artifacts, so that the descriptors of the
+ * dependencies left out are never read, nor their own dependencies traversed.
+ * <p>
+ * The requested artifacts are the dependencies listed by the collect request, at depth {@code 1}, and are always
+ * selected. Below them, a dependency is selected down to a given depth if:
+ * <ul>
+ * <li>it is not optional, unless optional dependencies are included,</li>
+ * <li>its scope is among the included ones, if any, and not among the excluded ones,</li>
+ * <li>it is not excluded by the {@code <exclusions>} of a dependency on its path,</li>
+ * <li>its coordinates match any of the include patterns, if any, and none of the exclude patterns.</li>
+ * </ul>
+ * Patterns have the form {@code groupId[:artifactId[:version[:type[:classifier]]]]}, missing parts matching
+ * anything and each part possibly holding {@code *} wildcards.
+ * <p>
+ * The resolver derives the selector of the listed dependencies from the one of the session, so the selector
+ * set on the session is at depth {@code 0}. Selectors are compared, so that the resolver can reuse the
+ * subgraphs collected with an equal selector.
+ */
+final class TransitiveDependencySelector implements DependencySelector {
+    private static final String WILDCARD = "*";
+
+    private final long depth;
+    private final long maxDepth;
+    private final Set<String> includeScopes;
+    private final Set<String> excludeScopes;
+    private final boolean includeOptional;
+    private final String[] includes;
+    private final String[] excludes;
+    private final Set<Exclusion> exclusions;
+
+    /**
+     * @param maxDepth depth of the deepest dependencies to select
+     * @param includeScopes scopes of the dependencies to select, may be {@code null} or empty for all of them
+     * @param excludeScopes scopes of the dependencies not to select, may be {@code null}
+     * @param includeOptional whether to select optional dependencies
+     * @param includes patterns of the dependencies to select, may be {@code null} or empty for all of them
+     * @param excludes patterns of the dependencies not to select, may be {@code null}
+     */
+    TransitiveDependencySelector(long maxDepth, String[] includeScopes, String[] excludeScopes,
+                                 boolean includeOptional, String[] includes, String[] excludes) {
+        this(0L, maxDepth, scopes(includeScopes), scopes(excludeScopes), includeOptional, patterns(includes),
+                patterns(excludes), Collections.emptySet());
+    }
+
+    private TransitiveDependencySelector(long depth, long maxDepth, Set<String> includeScopes,
+                                         Set<String> excludeScopes, boolean includeOptional, String[] includes,
+                                         String[] excludes, Set<Exclusion> exclusions) {
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.includeScopes = includeScopes;
+        this.excludeScopes = excludeScopes;
+        this.includeOptional = includeOptional;
+        this.includes = includes;
+        this.excludes = excludes;
+        this.exclusions = exclusions;
+    }
+
+    @Override
+    public boolean selectDependency(Dependency dependency) {
+        if (this.depth > this.maxDepth) {
+            return false;
+        }
+        if (this.depth <= 1L) {
+            // a requested artifact
+            return true;
+        }
+        if (dependency.isOptional() && !this.includeOptional) {
+            return false;
+        }
+        final String scope = dependency.getScope().isEmpty() ? "compile" : dependency.getScope();
+        if (!this.includeScopes.isEmpty() && !this.includeScopes.contains(scope)
+                || this.excludeScopes.contains(scope)) {
+            return false;
+        }
+        final Artifact artifact = dependency.getArtifact();
+        if (this.exclusions.stream().anyMatch(exclusion -> excludes(exclusion, artifact))) {
+            return false;
+        }
+        return (this.includes.length == 0 || matchesAny(this.includes, artifact))
+                && !matchesAny(this.excludes, artifact);
+    }
+
+    @Override
+    public DependencySelector deriveChildSelector(DependencyCollectionContext context) {
+        if (this.depth > this.maxDepth) {
+            // no dependency is selected below the maximum depth, whatever the depth
+            return this;
+        }
+        Set<Exclusion> childExclusions = this.exclusions;
+        final Dependency parent = context.getDependency();
+        if (parent != null && !parent.getExclusions().isEmpty()) {
+            // exclusions apply to the whole subtree of the dependency declaring them
+            childExclusions = new HashSet<>(this.exclusions);
+            childExclusions.addAll(parent.getExclusions());
+        }
+        return new TransitiveDependencySelector(this.depth + 1, this.maxDepth, this.includeScopes,
+                this.excludeScopes, this.includeOptional, this.includes, this.excludes, childExclusions);
+    }
+
+    private static boolean excludes(Exclusion exclusion, Artifact artifact) {
+        return matches(exclusion.getGroupId(), artifact.getGroupId())
+                && matches(exclusion.getArtifactId(), artifact.getArtifactId())
+                && matches(exclusion.getExtension(), artifact.getExtension())
+                && matches(exclusion.getClassifier(), artifact.getClassifier());
+    }
+
+    private static boolean matches(String pattern, String value) {
+        return WILDCARD.equals(pattern) || pattern.equals(value);
+    }
+
+    private static boolean matchesAny(String[] patterns, Artifact artifact) {
+        final String[] coordinates = {artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
+                artifact.getProperty("type", artifact.getExtension()), artifact.getClassifier()};
+        for (String pattern : patterns) {
+            final String[] parts = pattern.split(":");
+            boolean matches = parts.length <= coordinates.length;
+            for (int i = 0; matches && i < parts.length; ++i) {
+                matches = SelectorUtils.match(parts[i], coordinates[i]);
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> scopes(String[] scopes) {
+        if (scopes == null) {
+            return Collections.emptySet();
+        }
+        return Arrays.stream(scopes)
+                .filter(scope -> scope != null && !scope.trim().isEmpty())
+                .map(scope -> scope.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+    }
+
+    private static String[] patterns(String[] patterns) {
+        if (patterns == null) {
+            return new String[0];
+        }
+        return Arrays.stream(patterns)
+                .filter(pattern -> pattern != null && !pattern.trim().isEmpty())
+                .map(String::trim)
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        final TransitiveDependencySelector other = (TransitiveDependencySelector) obj;
+        return this.depth == other.depth && this.maxDepth == other.maxDepth
+                && this.includeOptional == other.includeOptional
+                && this.includeScopes.equals(other.includeScopes)
+                && this.excludeScopes.equals(other.excludeScopes)
+                && Arrays.equals(this.includes, other.includes)
+                && Arrays.equals(this.excludes, other.excludes)
+                && this.exclusions.equals(other.exclusions);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.depth, this.maxDepth, this.includeOptional, this.includeScopes,
+                this.excludeScopes, Arrays.hashCode(this.includes), Arrays.hashCode(this.excludes), this.exclusions);
+    }
+}
@@ -14,11 +14,18 @@
  */
 package com.googlecode.download.maven.plugin.internal;
 
+import com.googlecode.download.maven.plugin.internal.cache.CacheJanitor;
+import com.googlecode.download.maven.plugin.internal.cache.ContentStore;
+import com.googlecode.download.maven.plugin.internal.cache.ExtractedTreeCache;
+import com.googlecode.download.maven.plugin.internal.checksum.ChecksumVerifier;
 import com.googlecode.download.maven.plugin.internal.checksum.Checksums;
+import com.googlecode.download.maven.plugin.internal.checksum.VerifiedDigestStore;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.http.Header;
 import org.apache.http.message.BasicHeader;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -31,7 +38,10 @@ import org.codehaus.plexus.archiver.manager.ArchiverManager;
 import org.codehaus.plexus.archiver.manager.NoSuchArchiverException;
 import org.codehaus.plexus.archiver.snappy.SnappyUnArchiver;
 import org.codehaus.plexus.archiver.xz.XZUnArchiver;
+import org.codehaus.plexus.archiver.zip.AbstractZipUnArchiver;
 import org.codehaus.plexus.components.io.filemappers.FileMapper;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.eclipse.aether.repository.Authentication;
 import org.eclipse.aether.repository.AuthenticationContext;
 import org.eclipse.aether.repository.Proxy;
@@ -41,17 +51,34 @@ import org.sonatype.plexus.build.incremental.BuildContext;
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static org.apache.maven.shared.utils.StringUtils.isBlank;
 import static org.codehaus.plexus.util.StringUtils.isNotBlank;
 
@@ -71,10 +98,66 @@ public class WGetMojo extends AbstractMojo {
 
     /**
      * Represent the URL to fetch information from.
+     * Required unless {@link #downloads} is given.
      */
-    @Parameter(alias = "url", property = "download.url", required = true)
+    @Parameter(alias = "url", property = "download.url")
     private URI uri;
 
+    /**
+     * Resources to download in this execution, instead of the single {@link #uri}. Each entry takes
+     * a {@code uri} along with optional {@code outputFileName}, {@code outputDirectory}, {@code md5},
+     * {@code sha1}, {@code sha256}, {@code sha512} and {@code unpack} settings; the output directory and
+     * unpacking default to those of the execution. All other settings apply to each entry.
+     * <p>
+     * Entries are downloaded concurrently by up to {@link #threads} workers. A failed entry does not stop
+     * the others, and all failures are reported together.
+     *
+     * @since 1.7.1
+     */
+    @Parameter
+    private List<Download> downloads;
+
+    /**
+     * Manifest file listing resources to download, for lists too long to be configured as {@link #downloads}.
+     * The manifest is read as it is processed, and holds one resource per line, in one of these formats, chosen
+     * by the file extension:
+     * <ul>
+     *     <li>{@code .csv}: {@code url,path,digest} columns;</li>
+     *     <li>{@code .jsonl}, {@code .ndjson} or {@code .json}: one object per line, with {@code url}, {@code path}
+     *     and {@code digest} members;</li>
+     *     <li>anything else: whitespace separated {@code url path digest} fields.</li>
+     * </ul>
+     * Paths are relative to {@link #outputDirectory} and default to the last segment of the URL. Digests are
+     * either {@code <algorithm>:<hex>}, e.g. {@code sha256:...}, or bare hexadecimal values. Files are not unpacked.
+     * <p>
+     * Existing files matching their digest are not downloaded again. The outcome of each entry is appended
+     * to {@link #manifestResult}, so that a later run skips the entries completed by an interrupted one.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.manifest")
+    private File manifest;
+
+    /**
+     * File the outcome of each {@link #manifest} entry is appended to, as a JSON object per line with
+     * {@code line}, {@code url}, {@code path}, {@code status} ({@code downloaded}, {@code verified} or
+     * {@code failed}) and {@code message} members. Once a run finishes, the file is compacted to the latest
+     * outcome of each entry.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.manifestResult",
+            defaultValue = "${project.build.directory}/download-manifest-result.jsonl")
+    private File manifestResult;
+
+    /**
+     * Maximum number of {@link #downloads} or {@link #manifest} entries retrieved concurrently.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.threads", defaultValue = "4")
+    private int threads;
+
     /**
      * Flag to overwrite the file by redownloading it.
      * {@code overwrite=true} means that if the target file pre-exists
@@ -134,6 +217,83 @@ public class WGetMojo extends AbstractMojo {
     @Parameter(property = "download.unpack", defaultValue = "false")
     private boolean unpack;
 
+    /**
+     * Whether to extract tar archives ({@code .tar}, {@code .tar.gz}, {@code .tgz}, {@code .tar.xz}, {@code .txz},
+     * {@code .tar.bz2}, {@code .tbz2}) while they are downloaded when {@link #unpack} is set, instead of writing
+     * the archive to the output file and extracting it afterwards.
+     * <p>
+     * The content is decompressed and extracted on a separate thread as it is received, with {@link #fileMappers}
+     * applied on the fly. If a cache is used, the archive is written to the cache as it is received, and a cached
+     * archive is extracted straight from the cache. Since checksums can only be verified once the whole archive was
+     * received, the extracted files are deleted again if they do not match. Other archive formats are unpacked as
+     * usual.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.unpack.stream", defaultValue = "false")
+    private boolean streamUnpack;
+
+    /**
+     * Whether to check that the files of an archive unpacked by a previous build still have the size and
+     * modification time they were unpacked with, before skipping it.
+     * <p>
+     * When an archive is unpacked, a hidden {@code .<outputFileName>.unpacked} file of the output directory records
+     * the URI, checksums and {@link #fileMappers} it was unpacked with, the SHA-256 of the archive and the unpacked
+     * files. Unless {@link #overwrite} is set, later builds with the same settings skip both the download and the
+     * unpacking. With {@link #overwrite}, the archive is downloaded again but only unpacked if it changed. By default,
+     * the record alone is trusted; with this option, an unpacked file changed or deleted meanwhile causes the archive
+     * to be unpacked again.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.unpack.verify", defaultValue = "false")
+    private boolean verifyUnpacked;
+
+    /**
+     * Number of threads extracting a zip archive (including jar, war and other zip based formats) when
+     * {@link #unpack} is set, {@code 0} meaning one per available processor.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.unpack.threads", defaultValue = "0")
+    private int unpackThreads;
+
+    /**
+     * Whether to keep unpacked archives in the cache, so that an archive unpacked by several modules or builds with
+     * the same {@link #fileMappers}, {@link #includes} and {@link #excludes} is only extracted once.
+     * <p>
+     * Unpacked files are then hard-linked from the cache into the output directory, or copied where the file
+     * system does not support links. As linked files share their content with the cache, they must not be
+     * modified in place. Unpacked archives are evicted from the cache once unused for {@link #cacheMaxAge} days.
+     * Archives extracted while they are downloaded, see {@link #streamUnpack}, are not kept.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.unpack.cache", defaultValue = "false")
+    private boolean unpackCache;
+
+    /**
+     * Ant-style patterns of the archive entries to extract when {@link #unpack} is set, e.g. {@code bin/**}.
+     * All entries are extracted if none is given. Patterns match the paths within the archive, before
+     * {@link #fileMappers} are applied.
+     * <p>
+     * Entries which are not selected are skipped without being decompressed where the format allows it:
+     * zip entries are left out from the central directory, and the bodies of tar entries are skipped.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.unpack.includes")
+    private String[] includes;
+
+    /**
+     * Ant-style patterns of the archive entries not to extract when {@link #unpack} is set, applied as
+     * {@link #includes}.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.unpack.excludes")
+    private String[] excludes;
+
     /**
      * Server Id from settings file to use for authentication
      * Only one of serverId or (username/password) may be supplied
@@ -182,6 +342,54 @@ public class WGetMojo extends AbstractMojo {
     @Parameter(property = "download.cache.directory")
     private File cacheDirectory;
 
+    /**
+     * Whether to store cached files by their SHA-256 in a content-addressable layout, so that identical content
+     * retrieved from several URLs is stored only once.
+     * <p>
+     * Whatever this setting, unless the cache is skipped, a file whose {@link #sha256} or {@link #sha512} matches
+     * content already stored in this layout is copied from the cache without any HTTP request.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.cache.contentAddressable", defaultValue = "false")
+    private boolean contentAddressableCache;
+
+    /**
+     * Maximum total size, in bytes, of the files kept in the cache, {@code 0} meaning unlimited.
+     * Least recently used entries are evicted once the cache grows beyond it.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.cache.maxSize", defaultValue = "0")
+    private long cacheMaxSize;
+
+    /**
+     * Maximum number of entries kept in the cache, {@code 0} meaning unlimited.
+     * Least recently used entries are evicted once the cache holds more.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.cache.maxEntries", defaultValue = "0")
+    private int cacheMaxEntries;
+
+    /**
+     * Maximum number of days a cache entry is kept without being used, {@code 0} meaning unlimited.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.cache.maxAge", defaultValue = "0")
+    private int cacheMaxAge;
+
+    /**
+     * Whether cache files that no entry references, e.g. left behind by crashed builds, are deleted at most
+     * once a day even if no {@code cacheMax*} limit is set. They are always deleted when a limit is set.
+     * Only files named like the ones the plugin stores are deleted.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.cache.sweep", defaultValue = "false")
+    private boolean cacheSweep;
+
     /**
      * Flag to determine whether to fail on an unsuccessful download.
      */
@@ -207,6 +415,19 @@ public class WGetMojo extends AbstractMojo {
     @Parameter(property = "alwaysVerifyChecksum", defaultValue = "false")
     private boolean alwaysVerifyChecksum;
 
+    /**
+     * Whether to hash existing files again when {@link #alwaysVerifyChecksum} is set, even if they have not changed
+     * since they were last verified.
+     * <p>
+     * Unless the cache is skipped, the digests of verified files are recorded in the cache directory along with
+     * the size, modification time and file key of each file. By default, an existing file whose attributes are
+     * unchanged is accepted without being read again.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.verify.rehash", defaultValue = "false")
+    private boolean rehashChecksum;
+
     /**
      * @deprecated The option name is counter-intuitive and not related to signatures but to checksums, in fact.
      * Please use {@link #alwaysVerifyChecksum} instead. This option might be removed in a future release.
@@ -232,6 +453,9 @@ public class WGetMojo extends AbstractMojo {
     @Parameter(property = "session", readonly = true)
     private MavenSession session;
 
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    private MojoExecution mojoExecution;
+
     @Inject
     private ArchiverManager archiverManager;
 
@@ -255,7 +479,9 @@ public class WGetMojo extends AbstractMojo {
      * Maximum time (ms) to wait to acquire a file lock.
      *
      * Customize the time when using the plugin to download the same file
-     * from several submodules in parallel build.
+     * from several submodules in parallel build. It also bounds the time spent waiting for
+     * another build downloading the same URL into a shared cache, or for another execution of this build
+     * downloading the same resource, after which the URL is downloaded anyway.
      */
     @Parameter(property = "maxLockWaitTime", defaultValue = "30000")
     private long maxLockWaitTime;
@@ -276,6 +502,43 @@ public class WGetMojo extends AbstractMojo {
     @Parameter(property = "preemptiveAuth", defaultValue = "false")
     private boolean preemptiveAuth;
 
+    /**
+     * Maximum number of byte ranges to download concurrently over separate connections.
+     * <p>
+     * If greater than {@code 1} and the server advertises byte range support, large resources are
+     * downloaded as segments written directly into a preallocated file. The number of concurrent segments starts low
+     * and grows up to this value as long as it improves the measured throughput. Servers that do not support
+     * byte ranges are downloaded over a single connection.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.segments", defaultValue = "1")
+    private int segments;
+
+    /**
+     * Minimum size, in bytes, of a segment when {@link #segments} is greater than {@code 1}.
+     * Resources smaller than twice this size are downloaded over a single connection.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.minSegmentSize", defaultValue = "8388608")
+    private long minSegmentSize;
+
+    /**
+     * How the output file is made when it is found in the cache: {@code copy}, {@code hardlink} to the cached
+     * file, or {@code symlink} to it. Links are made in constant time whatever the size of the file, and fall back to copies where the file system
+     * does not support them. As a linked output file shares its content with the cache, it must not be modified in
+     * place, and a symbolic link breaks once the cached file is evicted.
+     * <p>
+     * With {@code copy}, a cached resource is served by the HTTP cache, as before this option existed. With the other
+     * modes, a cached resource which is still fresh is linked without any request, while a stale one is revalidated
+     * and copied by the HTTP cache, as with {@code copy}.
+     *
+     * @since 1.7.1
+     */
+    @Parameter(property = "download.outputMode", defaultValue = "copy")
+    private String outputMode;
+
     /**
      * Method call when the mojo is executed for the first time.
      *
@@ -308,11 +571,9 @@ public class WGetMojo extends AbstractMojo {
         if (this.retries < 1) {
             throw new MojoFailureException("retries must be at least 1");
         }
+        this.outputMode();
 
         // PREPARE
-        if (this.outputFileName == null) {
-            this.outputFileName = FileNameUtils.getOutputFileName(this.uri);
-        }
         if (!this.skipCache) {
             if (this.cacheDirectory == null) {
                 this.cacheDirectory = new File(this.session.getLocalRepository()
@@ -326,15 +587,212 @@ public class WGetMojo extends AbstractMojo {
         } else {
             getLog().debug("Cache is skipped");
         }
-        this.outputDirectory.mkdirs();
-        final File outputFile = new File(this.outputDirectory, this.outputFileName);
+        if (this.manifest != null) {
+            this.fetchManifest();
+        } else if (this.downloads == null || this.downloads.isEmpty()) {
+            if (this.uri == null) {
+                throw new MojoExecutionException("Either uri, downloads or manifest must be set");
+            }
+            this.fetch(new Download(this.uri, this.outputFileName, this.outputDirectory,
+                    this.md5, this.sha1, this.sha256, this.sha512, this.unpack)
+                    .withDefaults(this.outputDirectory, this.unpack));
+        } else {
+            this.fetchAll();
+        }
+        if (!this.skipCache) {
+            this.cleanCache();
+        }
+    }
+
+    /**
+     * Retrieves all resources of the {@link #downloads} list on a pool of {@link #threads} workers.
+     * Each resource is retrieved as if it were the only one, and failures are reported together once
+     * all resources were processed.
+     */
+    private void fetchAll() throws MojoExecutionException, MojoFailureException {
+        final List<Download> all = new ArrayList<>();
+        for (Download download : this.downloads) {
+            if (download.getUri() == null) {
+                throw new MojoExecutionException("uri must be set for each entry of downloads");
+            }
+            all.add(download.withDefaults(this.outputDirectory, this.unpack));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.threads, all.size())),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "download-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        final Map<Download, Future<?>> results = new LinkedHashMap<>();
+        try {
+            for (Download download : all) {
+                results.put(download, executor.submit(() -> {
+                    this.fetch(download);
+                    return null;
+                }));
+            }
+            final Map<Download, Throwable> failures = new LinkedHashMap<>();
+            for (Map.Entry<Download, Future<?>> result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                } catch (ExecutionException e) {
+                    failures.put(result.getKey(), e.getCause());
+                }
+            }
+            if (!failures.isEmpty()) {
+                reportFailures(failures, all.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while downloading", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Retrieves the resources listed in the {@link #manifest} on a pool of {@link #threads} workers.
+     * At most twice as many entries as workers are read ahead, so that the manifest entries are never held in
+     * memory. Entries completed by an earlier run, as recorded in the result file, are skipped, so that an
+     * interrupted run resumes where it stopped. When the run ends, the result file is compacted to the latest
+     * outcome of each entry.
+     */
+    private void fetchManifest() throws MojoExecutionException, MojoFailureException {
+        final File resultFile = this.manifestResult != null
+                ? this.manifestResult
+                : new File(this.outputDirectory, "download-manifest-result.jsonl");
+        final int workers = Math.max(1, this.threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            final Thread thread = new Thread(runnable, "download-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Semaphore readAhead = new Semaphore(2 * workers);
+        final AtomicInteger total = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        try (Manifest reader = new Manifest(this.manifest); Manifest.Result result = new Manifest.Result(resultFile)) {
+            final Set<String> completed = Manifest.Result.completed(resultFile);
+            final Path root = this.outputDirectory.toPath().toAbsolutePath().normalize();
+            Manifest.Entry entry;
+            while ((entry = reader.next()) != null) {
+                total.incrementAndGet();
+                final Path target = root.resolve(entry.path()).normalize();
+                if (!target.startsWith(root) || target.equals(root)) {
+                    throw new MojoExecutionException(String.format("%s:%d: path %s is outside of %s",
+                            this.manifest, entry.line(), entry.path(), root));
+                }
+                if (completed.contains(entry.key()) && Files.isRegularFile(target)) {
+                    skipped.incrementAndGet();
+                    continue;
+                }
+                readAhead.acquire();
+                final Manifest.Entry current = entry;
+                executor.execute(() -> {
+                    try {
+                        if (!this.fetchEntry(current, target.toFile(), result)) {
+                            failed.incrementAndGet();
+                        }
+                    } finally {
+                        readAhead.release();
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not process manifest " + this.manifest + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while downloading", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        try {
+            Manifest.Result.compact(resultFile);
+        } catch (IOException e) {
+            getLog().warn("Could not compact " + resultFile + ": " + e.getMessage());
+        }
+        getLog().info(String.format("Manifest %s: %d entries, %d completed by a previous run, %d failed",
+                this.manifest, total.get(), skipped.get(), failed.get()));
+        if (failed.get() > 0 && this.failOnError) {
+            throw new MojoExecutionException(String.format("%d of %d manifest entries failed, see %s",
+                    failed.get(), total.get(), resultFile));
+        }
+    }
+
+    /**
+     * Retrieves one manifest entry, unless its target already matches its digest, and records the outcome.
+     *
+     * @return false if the entry failed
+     */
+    private boolean fetchEntry(Manifest.Entry entry, File target, Manifest.Result result) {
+        final Download download = new Download(entry.uri(), target.getName(), target.getParentFile(),
+                entry.digest("md5"), entry.digest("sha1"), entry.digest("sha256"), entry.digest("sha512"), false);
+        String status;
+        String message = null;
+        try {
+            if (!this.overwrite && target.isFile() && this.checksums(download).isValid(target)) {
+                status = Manifest.Result.VERIFIED;
+            } else {
+                // a file which does not match must not be kept as is by fetch()
+                Files.deleteIfExists(target.toPath());
+                this.fetch(download);
+                status = target.isFile() ? Manifest.Result.DOWNLOADED : Manifest.Result.FAILED;
+            }
+        } catch (IOException | MojoExecutionException | MojoFailureException | RuntimeException e) {
+            status = Manifest.Result.FAILED;
+            message = String.valueOf(e.getMessage()).trim();
+            if (message.endsWith(":") && e.getCause() != null) {
+                // e.g. "IO Error: " wrapping the actual failure
+                message += " " + e.getCause().getMessage();
+            }
+            getLog().warn(String.format("%s:%d: %s", this.manifest, entry.line(), message));
+        }
+        try {
+            result.record(entry, status, message);
+        } catch (IOException e) {
+            getLog().warn("Could not record the result of " + entry.uri() + ": " + e.getMessage());
+        }
+        return !Manifest.Result.FAILED.equals(status);
+    }
+
+    /**
+     * Reports the failed downloads of the list at once. The failure is a {@link MojoFailureException}
+     * if each download failed that way, e.g. on a checksum mismatch.
+     */
+    private static void reportFailures(Map<Download, Throwable> failures, int count)
+            throws MojoExecutionException, MojoFailureException {
+        final StringBuilder message = new StringBuilder()
+                .append(failures.size()).append(" of ").append(count).append(" downloads failed:");
+        failures.forEach((download, failure) -> message.append(System.lineSeparator())
+                .append("  ").append(download.getUri()).append(": ").append(failure.getMessage()));
+        if (failures.values().stream().allMatch(MojoFailureException.class::isInstance)) {
+            final MojoFailureException exception = new MojoFailureException(message.toString());
+            failures.values().forEach(exception::addSuppressed);
+            throw exception;
+        }
+        final MojoExecutionException exception = new MojoExecutionException(message.toString());
+        failures.values().forEach(exception::addSuppressed);
+        throw exception;
+    }
+
+    /**
+     * Retrieves one resource into its output file, unless it is already there, then unpacks it if requested.
+     */
+    private void fetch(Download download) throws MojoExecutionException, MojoFailureException {
+        download.getOutputDirectory().mkdirs();
+        final File outputFile = download.getOutputFile();
         final Lock fileLock = FILE_LOCKS.computeIfAbsent(
             outputFile.getAbsolutePath(), ignored -> new ReentrantLock()
         );
 
-        final Checksums checksums = new Checksums(
-            this.md5, this.sha1, this.sha256, this.sha512, this.getLog()
-        );
+        final Checksums checksums = this.checksums(download);
+        final EntrySelector selector = EntrySelector.of(this.includes, this.excludes);
+        final TarStreamExtractor extractor = download.isUnpack() && this.streamUnpack
+                ? TarStreamExtractor.forFile(download.getOutputFileName(), download.getOutputDirectory(),
+                        this.fileMappers, selector, this.getLog())
+                : null;
         // DO
         boolean lockAcquired = false;
         try {
@@ -353,6 +811,14 @@ public class WGetMojo extends AbstractMojo {
                     return;
                 }
             }
+            final ExtractionMarker marker = download.isUnpack()
+                    ? ExtractionMarker.of(download, this.describeFileMappers(), selector)
+                    : null;
+            if (marker != null && !this.overwrite && !outputFile.exists()
+                    && marker.isUpToDate(this.verifyUnpacked)) {
+                getLog().info("Archive already unpacked, skipping");
+                return;
+            }
             boolean haveFile = outputFile.exists();
             if (haveFile) {
                 boolean checksumMatch = true;
@@ -374,6 +840,12 @@ public class WGetMojo extends AbstractMojo {
                 }
             }
 
+            if (!haveFile && extractor == null && !this.skipCache
+                    && this.copyFromContentStore(download, checksums)) {
+                checksums.record(outputFile);
+                haveFile = true;
+            }
+
             if (!haveFile) {
                 if (this.session.getRepositorySession().isOffline()) {
                     if (this.failOnError) {
@@ -382,30 +854,12 @@ public class WGetMojo extends AbstractMojo {
                         getLog().warn("Ignoring download failure.");
                     }
                 }
-                boolean done = false;
-                for (int retriesLeft = this.retries; !done && retriesLeft > 0; --retriesLeft) {
-                    try {
-                        this.doGet(outputFile);
-                        checksums.validate(outputFile);
-                        done = true;
-                    } catch (DownloadFailureException ex) {
-                        // treating HTTP codes >= 500 as transient and thus always retriable
-                        if (this.failOnError && ex.getHttpCode() < 500) {
-                            throw new MojoExecutionException(ex.getMessage(), ex);
-                        } else {
-                            getLog().warn(ex.getMessage());
-                        }
-                    } catch (IOException ex) {
-                        if (this.failOnError) {
-                            throw new MojoExecutionException(ex.getMessage(), ex);
-                        } else {
-                            getLog().warn(ex.getMessage());
-                        }
-                    }
-                    if (!done) {
-                        getLog().warn("Retrying (" + (retriesLeft - 1) + " more)");
-                    }
+                if (extractor != null) {
+                    marker.invalidate();
                 }
+                final boolean done = extractor != null
+                        ? this.downloadAndExtract(download, checksums, extractor)
+                        : this.downloadOnce(download, checksums);
                 if (!done) {
                     if (this.failOnError) {
                         throw new MojoFailureException("Could not get content after " + this.retries + " failed attempts.");
@@ -414,10 +868,24 @@ public class WGetMojo extends AbstractMojo {
                         return;
                     }
                 }
+                if (extractor != null) {
+                    marker.write(download.getSha256(), extractor.extracted());
+                    this.buildContext.refresh(download.getOutputDirectory());
+                    return;
+                }
             }
-            if (this.unpack) {
-                unpack(outputFile);
-                this.buildContext.refresh(this.outputDirectory);
+            if (download.isUnpack()) {
+                final String digest = download.getSha256() != null
+                        ? download.getSha256()
+                        : sha256(outputFile);
+                if (marker.isUpToDate(digest, this.verifyUnpacked)) {
+                    getLog().info("Archive unchanged since it was unpacked, skipping");
+                    outputFile.delete();
+                } else {
+                    marker.invalidate();
+                    marker.write(digest, unpack(download, selector, digest));
+                }
+                this.buildContext.refresh(download.getOutputDirectory());
             } else {
             	this.buildContext.refresh(outputFile);
             }
@@ -436,18 +904,330 @@ public class WGetMojo extends AbstractMojo {
         }
     }
 
-    private void unpack(File outputFile) throws NoSuchArchiverException {
-        UnArchiver unarchiver = this.archiverManager.getUnArchiver(outputFile);
-        unarchiver.setSourceFile(outputFile);
-        if (isFileUnArchiver(unarchiver)) {
-            unarchiver.setDestFile(new File(this.outputDirectory, this.outputFileName.substring(0,
-                    this.outputFileName.lastIndexOf('.'))));
+    /**
+     * Downloads an archive and extracts it as it is received, without writing it to the output file.
+     * A blob of the content-addressable cache matching the supplied digests is extracted instead, once it
+     * is verified against all supplied checksums, as in {@link #copyFromContentStore(Download, Checksums)}.
+     *
+     * @return true if the archive was extracted
+     */
+    private boolean downloadAndExtract(Download download, Checksums checksums, TarStreamExtractor extractor)
+            throws IOException, MojoExecutionException, MojoFailureException {
+        final Path blob = this.skipCache || download.getSha256() == null && download.getSha512() == null
+                ? null
+                : new ContentStore(this.cacheDirectory.toPath()).find(download.getSha256(), download.getSha512());
+        if (blob != null && this.isIntact(blob, checksums)) {
+            getLog().debug("Extracting file from content-addressable cache: " + blob);
+            try (InputStream in = Files.newInputStream(blob)) {
+                extractor.extract(in);
+            } catch (IOException e) {
+                extractor.rollback();
+                throw e;
+            }
+            return true;
+        }
+        final HttpFileRequester fileRequester = this.createFileRequester(download, checksums);
+        for (int retriesLeft = this.retries; retriesLeft > 0; --retriesLeft) {
+            try {
+                fileRequester.stream(getAdditionalHeaders(), extractor::extract);
+                return true;
+            } catch (DownloadFailureException ex) {
+                extractor.rollback();
+                // treating HTTP codes >= 500 as transient and thus always retriable
+                if (this.failOnError && ex.getHttpCode() < 500) {
+                    throw new MojoExecutionException(ex.getMessage(), ex);
+                } else {
+                    getLog().warn(ex.getMessage());
+                }
+            } catch (IOException ex) {
+                extractor.rollback();
+                // a streamed extraction keeps nothing to resume from
+                if (this.failOnError) {
+                    throw new MojoExecutionException(ex.getMessage(), ex);
+                } else {
+                    getLog().warn(ex.getMessage());
+                }
+            } catch (MojoFailureException ex) {
+                extractor.rollback();
+                throw ex;
+            }
+            getLog().warn("Retrying (" + (retriesLeft - 1) + " more)");
+        }
+        return false;
+    }
+
+    /**
+     * Verifies a blob of the content-addressable cache against all supplied checksums.
+     */
+    private boolean isIntact(Path blob, Checksums checksums) throws IOException {
+        final ChecksumVerifier verifier = checksums.verifier();
+        verifier.update(blob, Files.size(blob));
+        try {
+            verifier.verify();
+            return true;
+        } catch (MojoFailureException e) {
+            getLog().warn("Not using " + blob + " from the content-addressable cache: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private Checksums checksums(Download download) {
+        return new Checksums(
+            download.getMd5(), download.getSha1(), download.getSha256(), download.getSha512(),
+            this.skipCache ? null
+                : new VerifiedDigestStore(new File(this.cacheDirectory, VerifiedDigestStore.DIRECTORY),
+                    this.rehashChecksum),
+            this.getLog()
+        );
+    }
+
+    /**
+     * Downloads the output file, unless another execution of this build is already downloading the same
+     * resource into another file, in which case the output file is copied from that file once it is complete.
+     * The copy is never a link, as the other file belongs to another execution, which may modify or delete it.
+     *
+     * @return true if the output file was retrieved
+     */
+    private boolean downloadOnce(Download download, Checksums checksums)
+            throws IOException, MojoExecutionException, MojoFailureException {
+        final File outputFile = download.getOutputFile();
+        final InFlightDownloads.Flight flight = InFlightDownloads.join(InFlightDownloads.key(download.getUri(),
+                this.headers, this.serverId, this.username, this.password,
+                download.getMd5(), download.getSha1(), download.getSha256(), download.getSha512()));
+        if (!flight.isLeader()) {
+            try {
+                final File downloaded = flight.await(this.maxLockWaitTime);
+                if (downloaded != null) {
+                    getLog().info("Downloaded by another execution, copying " + downloaded);
+                    this.copy(downloaded, download);
+                    checksums.record(outputFile);
+                    return true;
+                }
+                if (!flight.hasLanded()) {
+                    getLog().warn(String.format("Another execution is still downloading %s after %d ms, "
+                            + "downloading it as well", download.getUri(), this.maxLockWaitTime));
+                }
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                getLog().warn("Could not copy the file downloaded by another execution: " + e.getMessage());
+            } finally {
+                flight.leave();
+            }
+            return this.download(download, checksums);
+        }
+        boolean done = false;
+        try {
+            done = this.download(download, checksums);
+        } finally {
+            flight.land(done ? outputFile : null);
+        }
+        return done;
+    }
+
+    /**
+     * Downloads the output file, retrying as configured.
+     *
+     * @return true if the output file was downloaded
+     */
+    private boolean download(Download download, Checksums checksums)
+            throws MojoExecutionException, MojoFailureException {
+        final HttpFileRequester fileRequester = this.createFileRequester(download, checksums);
+        final File outputFile = download.getOutputFile();
+        final File partFile = download.getPartFile();
+        boolean done = false;
+        for (int retriesLeft = this.retries; !done && retriesLeft > 0; --retriesLeft) {
+            try {
+                // checksums are verified by the requester as the content is written
+                fileRequester.download(partFile, getAdditionalHeaders());
+                moveToOutputFile(partFile, outputFile);
+                checksums.record(outputFile);
+                done = true;
+            } catch (DownloadFailureException ex) {
+                // treating HTTP codes >= 500 as transient and thus always retriable
+                if (this.failOnError && ex.getHttpCode() < 500) {
+                    throw new MojoExecutionException(ex.getMessage(), ex);
+                } else {
+                    getLog().warn(ex.getMessage());
+                }
+            } catch (IOException ex) {
+                // only a transfer interrupted past a checkpoint is retried, resuming where it stopped
+                if (this.failOnError
+                        && (retriesLeft == 1 || PartialDownload.load(partFile, download.getUri()).offset() == 0L)) {
+                    throw new MojoExecutionException(ex.getMessage(), ex);
+                } else {
+                    getLog().warn(ex.getMessage());
+                }
+            }
+            if (!done) {
+                getLog().warn("Retrying (" + (retriesLeft - 1) + " more)");
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Copies a file with the same content to the output file.
+     */
+    private void copy(File source, Download download) throws IOException {
+        final File partFile = download.getPartFile();
+        PartialDownload.delete(partFile);
+        Files.copy(source.toPath(), partFile.toPath(), REPLACE_EXISTING);
+        moveToOutputFile(partFile, download.getOutputFile());
+    }
+
+    /**
+     * Enforces the cache limits and reclaims unreferenced cache files. Failures only affect the cache,
+     * so they do not fail the build.
+     */
+    private void cleanCache() {
+        try {
+            new CacheJanitor(this.cacheDirectory.toPath(), this.getLog())
+                    .clean(this.cacheMaxSize, this.cacheMaxEntries, TimeUnit.DAYS.toMillis(this.cacheMaxAge),
+                            this.cacheSweep);
+        } catch (IOException | RuntimeException e) {
+            getLog().warn("Could not clean cache " + this.cacheDirectory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copies or links, according to {@link #outputMode}, the output file from the content-addressable cache if
+     * content matching the supplied SHA-256 or SHA-512 is stored there. Such content does not need to be
+     * revalidated, but is verified against all supplied checksums first, so that a damaged blob or a checksum
+     * contradicting the others is not trusted.
+     *
+     * @return true if the output file was taken from the cache
+     */
+    private boolean copyFromContentStore(Download download, Checksums checksums)
+            throws IOException, MojoExecutionException {
+        if (download.getSha256() == null && download.getSha512() == null) {
+            return false;
+        }
+        final Path blob = new ContentStore(this.cacheDirectory.toPath()).find(download.getSha256(), download.getSha512());
+        if (blob == null) {
+            return false;
+        }
+        if (!this.isIntact(blob, checksums)) {
+            return false;
+        }
+        getLog().debug("Taking file from content-addressable cache: " + blob);
+        final File partFile = download.getPartFile();
+        PartialDownload.delete(partFile);
+        this.outputMode().place(blob, partFile.toPath(), getLog());
+        moveToOutputFile(partFile, download.getOutputFile());
+        return true;
+    }
+
+    /**
+     * @return the {@link #outputMode}
+     * @throws MojoExecutionException if it is not a known mode
+     */
+    private OutputMode outputMode() throws MojoExecutionException {
+        if (this.outputMode == null) {
+            return OutputMode.COPY;
+        }
+        try {
+            return OutputMode.of(this.outputMode);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Atomically replaces the output file with the completely downloaded and verified partial file.
+     */
+    private static void moveToOutputFile(File partFile, File outputFile) throws IOException {
+        try {
+            Files.move(partFile.toPath(), outputFile.toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partFile.toPath(), outputFile.toPath(), REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Unpacks the output file of a resource into its output directory, then deletes it.
+     *
+     * @param digest SHA-256 of the output file
+     * @return the unpacked files, relative to the output directory
+     */
+    private List<Path> unpack(Download download, EntrySelector selector, String digest)
+            throws NoSuchArchiverException, IOException {
+        final File outputFile = download.getOutputFile();
+        final UnArchiver unarchiver = this.archiverManager.getUnArchiver(outputFile);
+        final String destFileName = isFileUnArchiver(unarchiver)
+                ? download.getOutputFileName().substring(0, download.getOutputFileName().lastIndexOf('.'))
+                : null;
+        final List<Path> unpacked;
+        if (this.unpackCache && !this.skipCache) {
+            final ExtractedTreeCache trees = new ExtractedTreeCache(this.cacheDirectory.toPath(), this.unpackThreads,
+                    this.getLog());
+            final String key = ExtractedTreeCache.key(digest, unarchiver.getClass().getName(),
+                    String.valueOf(destFileName), this.describeFileMappers(), String.valueOf(selector));
+            final Path tree = trees.get(key,
+                    directory -> this.extract(outputFile, unarchiver, destFileName, selector, directory.toFile()));
+            unpacked = trees.materialize(tree, download.getOutputDirectory().toPath());
+        } else {
+            unpacked = this.extract(outputFile, unarchiver, destFileName, selector, download.getOutputDirectory());
+        }
+        outputFile.delete();
+        return unpacked;
+    }
+
+    /**
+     * Extracts an archive into a directory.
+     *
+     * @param destFileName name of the extracted file for single file formats, e.g. gzip, {@code null} otherwise
+     * @return the extracted files, relative to the directory
+     */
+    private List<Path> extract(File archive, UnArchiver unarchiver, String destFileName, EntrySelector selector,
+                               File directory) throws IOException {
+        if (unarchiver instanceof AbstractZipUnArchiver) {
+            return new ZipExtractor(directory, this.fileMappers, selector, this.unpackThreads, this.getLog())
+                    .extract(archive);
+        }
+        final List<Path> unpacked = new ArrayList<>();
+        unarchiver.setSourceFile(archive);
+        if (destFileName != null) {
+            unarchiver.setDestFile(new File(directory, destFileName));
+            unpacked.add(Paths.get(destFileName));
         } else {
-            unarchiver.setDestDirectory(this.outputDirectory);
+            unarchiver.setDestDirectory(directory);
+            unarchiver.setFileSelectors(new FileSelector[] {fileInfo -> {
+                // selectors see the entry names before they are mapped
+                if (selector != null && !selector.isSelected(fileInfo.getName())) {
+                    return false;
+                }
+                if (!fileInfo.isDirectory()) {
+                    String name = fileInfo.getName();
+                    if (this.fileMappers != null) {
+                        for (FileMapper fileMapper : this.fileMappers) {
+                            name = fileMapper.getMappedFileName(name);
+                        }
+                    }
+                    unpacked.add(Paths.get(name));
+                }
+                return true;
+            }});
         }
         unarchiver.setFileMappers(this.fileMappers);
         unarchiver.extract();
-        outputFile.delete();
+        return unpacked;
+    }
+
+    /**
+     * Describes the {@link #fileMappers} by their configuration in this execution, as the mappers themselves
+     * keep their settings to themselves.
+     */
+    private String describeFileMappers() {
+        final Xpp3Dom configuration = this.mojoExecution != null ? this.mojoExecution.getConfiguration() : null;
+        return ExtractionMarker.describe(this.fileMappers,
+                configuration != null ? configuration.getChild("fileMappers") : null);
+    }
+
+    private static String sha256(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return DigestUtils.sha256Hex(in);
+        }
     }
 
     private boolean isFileUnArchiver(final UnArchiver unarchiver) {
@@ -471,10 +1251,19 @@ public class WGetMojo extends AbstractMojo {
                 .build();
     }
 
-    private void doGet(final File outputFile) throws IOException, MojoExecutionException {
+    /**
+     * Creates the requester used for all download attempts of this execution.
+     *
+     * @param download resource to download
+     * @param checksums checksums the downloaded file must match
+     * @return file requester
+     * @throws MojoExecutionException if the requester cannot be configured
+     */
+    private HttpFileRequester createFileRequester(Download download, Checksums checksums)
+            throws MojoExecutionException {
         final HttpFileRequester.Builder fileRequesterBuilder = new HttpFileRequester.Builder();
 
-        final RemoteRepository repository = createRemoteRepository(this.serverId, this.uri);
+        final RemoteRepository repository = createRemoteRepository(this.serverId, download.getUri());
 
         // set proxy if present
         Optional.ofNullable(this.session.getRepositorySession().getProxySelector())
@@ -486,25 +1275,33 @@ public class WGetMojo extends AbstractMojo {
                 .ifPresent(auth -> addAuthentication(fileRequesterBuilder, repository, auth));
 
         if (!this.skipCache) {
-            fileRequesterBuilder.withCacheDir(this.cacheDirectory);
+            fileRequesterBuilder
+                    .withCacheDir(this.cacheDirectory)
+                    .withContentAddressableCache(this.contentAddressableCache);
         }
 
-        final HttpFileRequester fileRequester = fileRequesterBuilder
-                .withProgressReport(this.session.getSettings().isInteractiveMode()
+        return fileRequesterBuilder
+                // the progress of concurrent downloads would be interleaved
+                .withProgressReport(this.session.getSettings().isInteractiveMode() && this.manifest == null
+                        && (this.downloads == null || this.downloads.isEmpty())
                         ? new LoggingProgressReport(this.getLog())
                         : new SilentProgressReport(this.getLog()))
                 .withConnectTimeout(this.readTimeOut)
                 .withSocketTimeout(this.readTimeOut)
-                .withUri(this.uri)
+                .withUri(download.getUri())
                 .withUsername(this.username)
                 .withPassword(this.password)
                 .withServerId(this.serverId)
                 .withPreemptiveAuth(this.preemptiveAuth)
                 .withMavenSession(this.session)
                 .withRedirectsEnabled(this.followRedirects)
+                .withChecksums(checksums)
+                .withSegments(this.segments)
+                .withMinSegmentSize(this.minSegmentSize)
+                .withMaxLockWaitTime(this.maxLockWaitTime)
+                .withOutputMode(this.outputMode())
                 .withLog(this.getLog())
                 .build();
-        fileRequester.download(outputFile, getAdditionalHeaders());
     }
 
     private void addProxy(final HttpFileRequester.Builder fileRequesterBuilder,
@@ -0,0 +1,275 @@
+/**
+ * Copyright 2009-2018 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.googlecode.download.maven.plugin.internal;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.components.io.filemappers.FileMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Extracts a zip archive on several threads.
+ * <p>
+ * The central directory is read once, entries not selected are left out without reading their data, then
+ * the other ones are split into batches of similar compressed size,
+ * which are inflated and written concurrently. The archive is read with positional reads on a single channel,
+ * so that the workers do not contend for a shared stream. Parent directories are all created upfront.
+ * <p>
+ * As by the plexus unarchivers, entry paths are rewritten by the configured {@link FileMapper}s and existing
+ * files are replaced. Entries whose path would end up outside of the destination directory are rejected,
+ * including through symbolic links: directories are checked against the real path of the destination before
+ * they are created, and the symbolic links of the archive are only created once all batches are written,
+ * by the calling thread, each of them checked again once they all exist.
+ */
+final class ZipExtractor {
+    private static final long BATCH_SIZE = 4L * 1024 * 1024;
+    private static final int BATCH_ENTRIES = 256;
+    private static final int UNIX_MODE_MASK = 0777;
+
+    private final Path destination;
+    private final FileMapper[] fileMappers;
+    private final EntrySelector selector;
+    private final int threads;
+    private final Log log;
+
+    /**
+     * @param destination directory to extract archives into
+     * @param fileMappers mappers of the entry paths, may be {@code null}
+     * @param selector entries to extract, may be {@code null} to extract all of them
+     * @param threads number of workers, {@code 0} or less for one per available processor
+     * @param log logger
+     */
+    ZipExtractor(File destination, FileMapper[] fileMappers, EntrySelector selector, int threads, Log log) {
+        this.destination = destination.toPath().toAbsolutePath().normalize();
+        this.fileMappers = fileMappers;
+        this.selector = selector;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.log = log;
+    }
+
+    /**
+     * Extracts an archive.
+     *
+     * @param archive zip archive
+     * @return the extracted files and links, relative to the destination directory
+     * @throws IOException if the archive is invalid or cannot be extracted
+     */
+    List<Path> extract(File archive) throws IOException {
+        final long start = System.nanoTime();
+        try (ZipFile zip = new ZipFile(archive)) {
+            Files.createDirectories(this.destination);
+            final Path realDestination = this.destination.toRealPath();
+            final Set<Path> directories = new TreeSet<>();
+            // the last of several entries with the same path wins, as when extracting sequentially
+            final Map<Path, Item> items = new LinkedHashMap<>();
+            for (Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder(); entries.hasMoreElements();) {
+                final ZipArchiveEntry entry = entries.nextElement();
+                if (this.selector != null && !this.selector.isSelected(entry.getName())) {
+                    // never inflated
+                    continue;
+                }
+                final Path target = this.target(entry.getName());
+                if (target == null) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    directories.add(target);
+                    continue;
+                }
+                directories.add(target.getParent());
+                items.remove(target);
+                items.put(target, new Item(entry, target));
+            }
+            final List<Path> extracted = new ArrayList<>();
+            final List<Item> links = new ArrayList<>();
+            final List<List<Item>> batches = new ArrayList<>();
+            List<Item> batch = new ArrayList<>();
+            long batchSize = 0L;
+            for (Item item : items.values()) {
+                extracted.add(this.destination.relativize(item.target));
+                if (item.entry.isUnixSymlink()) {
+                    // created last, so that no file of the archive is written through a link of the archive
+                    links.add(item);
+                    continue;
+                }
+                batch.add(item);
+                batchSize += Math.max(item.entry.getCompressedSize(), 0L);
+                if (batchSize >= BATCH_SIZE || batch.size() >= BATCH_ENTRIES) {
+                    batches.add(batch);
+                    batch = new ArrayList<>();
+                    batchSize = 0L;
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.add(batch);
+            }
+            // sorted, so that each parent is created before its children
+            for (Path directory : directories) {
+                if (!TarStreamExtractor.realPath(directory).startsWith(realDestination)) {
+                    throw new IOException("Directory " + this.destination.relativize(directory)
+                            + " is outside of the target directory " + this.destination);
+                }
+                Files.createDirectories(directory);
+            }
+            final AtomicInteger count = new AtomicInteger();
+            this.run(zip, batches, count);
+            this.createLinks(zip, links, realDestination);
+            count.addAndGet(links.size());
+            final double seconds = Math.max((System.nanoTime() - start) / 1e9, 1e-3);
+            this.log.info(String.format("Extracted %d entries into %s in %.1fs (%.0f entries/s)",
+                    count.get(), this.destination, seconds, count.get() / seconds));
+            return extracted;
+        }
+    }
+
+    private void run(ZipFile zip, List<List<Item>> batches, AtomicInteger count) throws IOException {
+        final int workers = Math.min(this.threads, batches.size());
+        if (workers <= 1) {
+            for (List<Item> batch : batches) {
+                count.addAndGet(this.write(zip, batch));
+            }
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            final Thread thread = new Thread(runnable, "unzip-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (List<Item> batch : batches) {
+                futures.add(executor.submit(() -> this.write(zip, batch)));
+            }
+            for (Future<Integer> future : futures) {
+                count.addAndGet(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting into " + this.destination);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the symbolic links of the archive, once its files are written. None of them is left in place
+     * if one of them points outside of the destination directory.
+     */
+    private void createLinks(ZipFile zip, List<Item> links, Path realDestination) throws IOException {
+        try {
+            for (Item item : links) {
+                final Path link = Paths.get(zip.getUnixSymlink(item.entry));
+                this.checkLink(item, link, realDestination);
+                Files.deleteIfExists(item.target);
+                Files.createSymbolicLink(item.target, link);
+            }
+            // a link may point through a link created after it
+            for (Item item : links) {
+                this.checkLink(item, Files.readSymbolicLink(item.target), realDestination);
+            }
+        } catch (IOException e) {
+            for (Item item : links) {
+                if (Files.isSymbolicLink(item.target)) {
+                    Files.delete(item.target);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void checkLink(Item item, Path link, Path realDestination) throws IOException {
+        final Path realParent = TarStreamExtractor.realPath(item.target.getParent());
+        if (!realParent.startsWith(realDestination)
+                || !TarStreamExtractor.realPath(realParent.resolve(link)).startsWith(realDestination)) {
+            throw new IOException("Link " + item.entry.getName() + " points outside of the target directory "
+                    + this.destination);
+        }
+    }
+
+    private int write(ZipFile zip, List<Item> batch) throws IOException {
+        for (Item item : batch) {
+            final ZipArchiveEntry entry = item.entry;
+            try (InputStream in = zip.getInputStream(entry)) {
+                Files.copy(in, item.target, REPLACE_EXISTING);
+            }
+            if (entry.getPlatform() == ZipArchiveEntry.PLATFORM_UNIX) {
+                TarStreamExtractor.setMode(item.target, entry.getUnixMode() & UNIX_MODE_MASK);
+            }
+            if (entry.getTime() != -1) {
+                Files.setLastModifiedTime(item.target, FileTime.fromMillis(entry.getTime()));
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * @return where an entry is extracted, or {@code null} if it is mapped to nothing
+     */
+    private Path target(String entryName) throws IOException {
+        String name = entryName;
+        if (this.fileMappers != null) {
+            for (FileMapper fileMapper : this.fileMappers) {
+                name = fileMapper.getMappedFileName(name);
+            }
+        }
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        final Path target = this.destination.resolve(name).normalize();
+        if (!target.startsWith(this.destination)) {
+            throw new IOException("Entry " + entryName + " is outside of the target directory " + this.destination);
+        }
+        return target;
+    }
+
+    private static final class Item {
+        private final ZipArchiveEntry entry;
+        private final Path target;
+
+        private Item(ZipArchiveEntry entry, Path target) {
+            this.entry = entry;
+            this.target = target;
+        }
+    }
+}
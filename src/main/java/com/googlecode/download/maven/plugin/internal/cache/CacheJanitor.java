@@ -0,0 +1,291 @@
+package com.googlecode.download.maven.plugin.internal.cache;
+
+import com.googlecode.download.maven.plugin.internal.checksum.VerifiedDigestStore;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the cache within configured limits and reclaims files which are no longer referenced.
+ * <p>
+ * Entries are evicted in least recently used order, based on the access times recorded in the index,
+ * once they exceed the maximum age, or while the cache holds too many entries or bytes. Entries used within
+ * the last {@value #GRACE_PERIOD_MINUTES} minutes are never evicted, so that a file being copied from the cache
+ * by another process is not deleted under its feet.
+ * <p>
+ * Files of the cache directory that no index entry references, e.g. left behind by overwritten entries or by
+ * crashed processes, are deleted by a sweep once they are older than the same grace period. The sweep runs
+ * only if limits are set or if it is requested, at most once a day, or after an eviction. It only deletes
+ * files named like the ones the plugin stores, so that other files of a shared directory are left alone.
+ * It also drops the recorded digests of {@link VerifiedDigestStore} whose files were deleted or changed since.
+ * <p>
+ * Unpacked archives of the {@link ExtractedTreeCache} only count against the maximum age, which applies to the
+ * time they were last materialized.
+ */
+public final class CacheJanitor {
+    static final long GRACE_PERIOD_MINUTES = 10L;
+    static final long GRACE_PERIOD = TimeUnit.MINUTES.toMillis(GRACE_PERIOD_MINUTES);
+    private static final long SWEEP_INTERVAL = TimeUnit.DAYS.toMillis(1L);
+    private static final String SWEEP_MARKER = "index.swept";
+
+    private final Path baseDir;
+    private final IndexJournal journal;
+    private final Log log;
+
+    /**
+     * @param baseDir directory of the cache
+     * @param log logger
+     */
+    public CacheJanitor(final Path baseDir, final Log log) {
+        this.baseDir = baseDir;
+        this.journal = new IndexJournal(baseDir, log);
+        this.log = log;
+    }
+
+    /**
+     * Evicts entries exceeding the given limits, then sweeps unreferenced files if due.
+     * Nothing is done if there is neither a limit nor a sweep requested.
+     *
+     * @param maxSize maximum number of bytes of all cached files, {@code 0} for no limit
+     * @param maxEntries maximum number of entries, {@code 0} for no limit
+     * @param maxAge maximum time since the last access of an entry, in milliseconds, {@code 0} for no limit
+     * @param sweep whether unreferenced files are swept even if there is no limit
+     * @throws IOException if the cache cannot be read or updated
+     */
+    public void clean(final long maxSize, final int maxEntries, final long maxAge, final boolean sweep)
+            throws IOException {
+        final boolean limited = maxSize > 0 || maxEntries > 0 || maxAge > 0;
+        if (!limited && !sweep || !Files.isDirectory(this.baseDir)) {
+            return;
+        }
+        final boolean evicted = limited && this.evict(maxSize, maxEntries, maxAge) > 0;
+        if (maxAge > 0) {
+            this.evictTrees(maxAge);
+        }
+        final Path marker = this.baseDir.resolve(SWEEP_MARKER);
+        if (evicted || !Files.exists(marker)
+                || Files.getLastModifiedTime(marker).toMillis() < System.currentTimeMillis() - SWEEP_INTERVAL) {
+            this.sweep();
+            Files.write(marker, new byte[0]);
+        }
+    }
+
+    /**
+     * Evicts entries in least recently used order, and deletes their files unless still referenced.
+     *
+     * @return number of evicted entries
+     */
+    int evict(final long maxSize, final int maxEntries, final long maxAge) throws IOException {
+        final long now = System.currentTimeMillis();
+        final Map<URI, String> entries = this.journal.read();
+        final Map<URI, Long> accessed = this.journal.accessTimes();
+        final Map<String, Integer> references = new HashMap<>();
+        final Map<String, Long> sizes = new HashMap<>();
+        long total = 0L;
+        for (String path : entries.values()) {
+            if (references.merge(path, 1, Integer::sum) == 1) {
+                final long size = this.size(path);
+                sizes.put(path, size);
+                total += size;
+            }
+        }
+        final List<URI> byAccess = new ArrayList<>(entries.keySet());
+        byAccess.sort(Comparator.comparingLong(uri -> accessed.getOrDefault(uri, 0L)));
+
+        final List<URI> expired = new ArrayList<>();
+        final List<URI> leastRecentlyUsed = new ArrayList<>();
+        int count = entries.size();
+        for (URI uri : byAccess) {
+            final long lastAccess = accessed.getOrDefault(uri, 0L);
+            final boolean isExpired = maxAge > 0 && lastAccess < now - maxAge;
+            final boolean overLimit = maxEntries > 0 && count > maxEntries || maxSize > 0 && total > maxSize;
+            if (!isExpired && !overLimit || lastAccess >= now - GRACE_PERIOD) {
+                break;
+            }
+            (isExpired ? expired : leastRecentlyUsed).add(uri);
+            --count;
+            final String path = entries.get(uri);
+            if (path != null && references.merge(path, -1, Integer::sum) == 0) {
+                total -= sizes.getOrDefault(path, 0L);
+            }
+        }
+
+        final Map<URI, String> candidates = new HashMap<>(entries);
+        final List<URI> removed = new ArrayList<>(this.journal.removeIf(expired, now - maxAge));
+        removed.addAll(this.journal.removeIf(leastRecentlyUsed, now - GRACE_PERIOD));
+        if (removed.isEmpty()) {
+            return 0;
+        }
+        final Set<String> live = new HashSet<>(this.journal.read().values());
+        long reclaimed = 0L;
+        for (URI uri : removed) {
+            final String path = candidates.get(uri);
+            if (path != null && !live.contains(path)) {
+                reclaimed += this.size(path);
+                Files.deleteIfExists(this.baseDir.resolve(path));
+                live.add(path);
+            }
+        }
+        this.log.info(String.format("Evicted %d entries (%d bytes) from cache %s", removed.size(), reclaimed,
+                this.baseDir));
+        return removed.size();
+    }
+
+    /**
+     * Deletes cached files which no entry references, content-addressable aliases of missing blobs,
+     * and digests of files which were deleted or changed. Files not named like cached files, blobs,
+     * aliases or digests are kept.
+     */
+    void sweep() throws IOException {
+        final long cutoff = System.currentTimeMillis() - GRACE_PERIOD;
+        final Set<Path> referenced = new HashSet<>();
+        this.journal.read().values().forEach(path -> referenced.add(this.baseDir.resolve(path).normalize()));
+        this.journal.legacyEntries().values()
+                .forEach(path -> referenced.add(this.baseDir.resolve(path).normalize()));
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.baseDir,
+                file -> Files.isRegularFile(file) && matches(FileIndexResourceFactory.CACHE_FILE_NAME, file))) {
+            for (Path file : files) {
+                deleted += this.deleteIfOrphan(file, referenced, cutoff);
+            }
+        }
+        final Path store = this.baseDir.resolve(ContentStore.DIRECTORY);
+        if (Files.isDirectory(store)) {
+            try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(store)) {
+                for (Path prefix : prefixes) {
+                    if (Files.isRegularFile(prefix)) {
+                        if (matches(ContentStore.TEMPORARY_NAME, prefix)) {
+                            // temporary file of an interrupted store
+                            deleted += this.deleteIfOrphan(prefix, referenced, cutoff);
+                        }
+                        continue;
+                    }
+                    if (ContentStore.ALIAS_DIRECTORY.equals(prefix.getFileName().toString())) {
+                        deleted += this.sweepAliases(prefix, cutoff);
+                        continue;
+                    }
+                    if (!matches(ContentStore.PREFIX_NAME, prefix)) {
+                        continue;
+                    }
+                    try (DirectoryStream<Path> blobs = Files.newDirectoryStream(prefix,
+                            blob -> Files.isRegularFile(blob) && matches(ContentStore.BLOB_NAME, blob))) {
+                        for (Path blob : blobs) {
+                            deleted += this.deleteIfOrphan(blob, referenced, cutoff);
+                        }
+                    }
+                }
+            }
+        }
+        final Path trees = this.baseDir.resolve(ExtractedTreeCache.DIRECTORY);
+        if (Files.isDirectory(trees)) {
+            try (DirectoryStream<Path> staging = Files.newDirectoryStream(trees,
+                    tree -> matches(ExtractedTreeCache.STAGING_NAME, tree))) {
+                for (Path tree : staging) {
+                    // left behind by an interrupted extraction
+                    if (isOlder(tree, cutoff)) {
+                        ExtractedTreeCache.delete(tree);
+                        ++deleted;
+                    }
+                }
+            }
+        }
+        deleted += new VerifiedDigestStore(this.baseDir.resolve(VerifiedDigestStore.DIRECTORY).toFile(), false)
+                .prune(cutoff);
+        if (deleted > 0) {
+            this.log.info(String.format("Deleted %d unreferenced files from cache %s", deleted, this.baseDir));
+        }
+    }
+
+    /**
+     * Deletes the unpacked archives which have not been used for longer than the given age.
+     *
+     * @return number of deleted trees
+     */
+    int evictTrees(final long maxAge) throws IOException {
+        final Path trees = this.baseDir.resolve(ExtractedTreeCache.DIRECTORY);
+        if (!Files.isDirectory(trees)) {
+            return 0;
+        }
+        final long cutoff = System.currentTimeMillis() - Math.max(maxAge, GRACE_PERIOD);
+        int deleted = 0;
+        try (DirectoryStream<Path> all = Files.newDirectoryStream(trees,
+                tree -> matches(ExtractedTreeCache.TREE_NAME, tree))) {
+            for (Path tree : all) {
+                if (isOlder(tree, cutoff)) {
+                    ExtractedTreeCache.delete(tree);
+                    ++deleted;
+                }
+            }
+        }
+        if (deleted > 0) {
+            this.log.info(String.format("Evicted %d unpacked archives from cache %s", deleted, this.baseDir));
+        }
+        return deleted;
+    }
+
+    private int sweepAliases(final Path aliases, final long cutoff) throws IOException {
+        int deleted = 0;
+        try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(aliases,
+                prefix -> Files.isDirectory(prefix) && matches(ContentStore.PREFIX_NAME, prefix))) {
+            for (Path prefix : prefixes) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(prefix, file -> Files.isRegularFile(file)
+                        && (matches(ContentStore.ALIAS_NAME, file) || matches(ContentStore.TEMPORARY_NAME, file)))) {
+                    for (Path alias : files) {
+                        final String blob = new String(Files.readAllBytes(alias), StandardCharsets.UTF_8).trim();
+                        if ((blob.isEmpty() || !Files.isRegularFile(this.baseDir.resolve(blob)))
+                                && isOlder(alias, cutoff) && Files.deleteIfExists(alias)) {
+                            ++deleted;
+                        }
+                    }
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private int deleteIfOrphan(final Path file, final Set<Path> referenced, final long cutoff) throws IOException {
+        if (referenced.contains(file.normalize()) || !isOlder(file, cutoff)) {
+            return 0;
+        }
+        if (this.log.isDebugEnabled()) {
+            this.log.debug("Deleting unreferenced cache file " + file);
+        }
+        return Files.deleteIfExists(file) ? 1 : 0;
+    }
+
+    private long size(final String path) {
+        try {
+            return Files.size(this.baseDir.resolve(path));
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static boolean matches(final Pattern pattern, final Path file) {
+        return pattern.matcher(file.getFileName().toString()).matches();
+    }
+
+    private static boolean isOlder(final Path file, final long cutoff) {
+        try {
+            final FileTime modified = Files.getLastModifiedTime(file);
+            return modified.toMillis() < cutoff;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.googlecode.download.maven.plugin.internal.cache;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/**
+ * Content-addressable storage of cached files, under the {@code cas} directory of the cache.
+ * <p>
+ * Each file is stored once, as {@code cas/<first two hex digits>/<SHA-256>}, whatever the number of
+ * URLs it was retrieved from. A {@code cas/sha512/<first two hex digits>/<SHA-512>} alias holds the path of
+ * the blob, so that it can be found by either digest.
+ */
+public final class ContentStore {
+    static final String DIRECTORY = "cas";
+    static final String ALIAS_DIRECTORY = "sha512";
+    static final Pattern PREFIX_NAME = Pattern.compile("[0-9a-f]{2}");
+    static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}");
+    static final Pattern ALIAS_NAME = Pattern.compile("[0-9a-f]{128}");
+    /**
+     * Names of the temporary files of a store or an alias interrupted before they were moved in place.
+     */
+    static final Pattern TEMPORARY_NAME = Pattern.compile("(?:blob|alias)[0-9]+\\.tmp");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path cacheDir;
+
+    /**
+     * @param cacheDir directory of the cache
+     */
+    public ContentStore(final Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Looks a blob up by its digest. Blobs are stored under lower case digests, so other digests never match.
+     * The content of the blob is not verified.
+     *
+     * @param sha256 expected SHA-256 of the content, may be {@code null}
+     * @param sha512 expected SHA-512 of the content, may be {@code null}
+     * @return absolute path of the blob, or {@code null} if it is not stored
+     */
+    public Path find(final String sha256, final String sha512) {
+        if (sha256 != null && isHex(sha256)) {
+            final Path blob = this.cacheDir.resolve(blobPath(sha256));
+            if (Files.isRegularFile(blob)) {
+                return blob;
+            }
+        }
+        if (sha512 != null && isHex(sha512)) {
+            final Path alias = this.cacheDir.resolve(aliasPath(sha512));
+            try {
+                final Path blob = this.cacheDir.resolve(
+                        new String(Files.readAllBytes(alias), StandardCharsets.UTF_8).trim());
+                if (Files.isRegularFile(blob)) {
+                    return blob;
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the content, unless the same content is already stored.
+     *
+     * @param inStream content
+     * @return path of the blob, relative to the cache directory
+     * @throws IOException if the content cannot be read or stored
+     */
+    Path store(final InputStream inStream) throws IOException {
+        final MessageDigest sha256 = digest("SHA-256");
+        final MessageDigest sha512 = digest("SHA-512");
+        final Path directory = this.cacheDir.resolve(DIRECTORY);
+        Files.createDirectories(directory);
+        final Path tmp = Files.createTempFile(directory, "blob", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = inStream.read(buffer)) != -1) {
+                    sha256.update(buffer, 0, read);
+                    sha512.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            final Path blob = blobPath(Hex.encodeHexString(sha256.digest()));
+            final Path target = this.cacheDir.resolve(blob);
+            try {
+                // the same content is already stored: keep it from being swept before it is indexed again
+                Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (NoSuchFileException e) {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(tmp, target, ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException ex) {
+                    // stored concurrently
+                }
+            }
+            this.alias(aliasPath(Hex.encodeHexString(sha512.digest())), blob);
+            return blob;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @param file path of a cached file, relative to the cache directory
+     * @return true if the file is a blob of this store
+     */
+    static boolean contains(final Path file) {
+        return file.getNameCount() == 3 && DIRECTORY.equals(file.getName(0).toString());
+    }
+
+    private void alias(final Path alias, final Path blob) throws IOException {
+        final Path target = this.cacheDir.resolve(alias);
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        final Path tmp = Files.createTempFile(target.getParent(), "alias", ".tmp");
+        try {
+            Files.write(tmp, blob.toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, target, ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // stored concurrently
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Path blobPath(final String sha256) {
+        return Paths.get(DIRECTORY, sha256.substring(0, 2), sha256);
+    }
+
+    private static Path aliasPath(final String sha512) {
+        return Paths.get(DIRECTORY, ALIAS_DIRECTORY, sha512.substring(0, 2), sha512);
+    }
+
+    private static boolean isHex(final String digest) {
+        return digest.length() > 2 && digest.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+    private static MessageDigest digest(final String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
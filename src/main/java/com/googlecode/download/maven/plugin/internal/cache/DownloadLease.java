@@ -0,0 +1,189 @@
+package com.googlecode.download.maven.plugin.internal.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/**
+ * Lease on the download of a URL into the cache, shared by all processes using the same cache directory.
+ * <p>
+ * The lease is a {@code locks/<SHA-1 of the URL>.lock} file of the cache directory, created atomically by
+ * the process which downloads the URL and holding its identity. While the lease is held, its modification
+ * time is refreshed every {@value #HEARTBEAT_SECONDS} seconds. Other processes wait for the lease to be
+ * released, then find the entry in the cache, or give up once their timeout expires. A lease which has not been refreshed for
+ * {@value #STALE_SECONDS} seconds belongs to a crashed process: it is taken over by atomically renaming it
+ * away, so that only one of the waiting processes recovers it.
+ */
+public final class DownloadLease implements Closeable {
+    static final String DIRECTORY = "locks";
+    static final long HEARTBEAT_SECONDS = 5L;
+    static final long STALE_SECONDS = 30L;
+    private static final long MAX_POLL_INTERVAL = 1000L;
+    private static final String OWNER_PREFIX = ManagementFactory.getRuntimeMXBean().getName() + '/';
+
+    private static final ScheduledExecutorService HEARTBEAT = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "download-lease-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path file;
+    private final String owner;
+    private final boolean waited;
+    private final ScheduledFuture<?> heartbeat;
+    private final Log log;
+
+    private DownloadLease(final Path file, final String owner, final boolean waited, final Log log) {
+        this.file = file;
+        this.owner = owner;
+        this.waited = waited;
+        this.log = log;
+        this.heartbeat = HEARTBEAT.scheduleWithFixedDelay(this::renew, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Acquires the lease on the download of a URL, waiting while another live process holds it,
+     * for at most the given time.
+     *
+     * @param cacheDir directory of the cache
+     * @param uri downloaded URL
+     * @param timeout maximum time to wait for the lease, in milliseconds
+     * @param log logger
+     * @return the lease, to be closed once the download is complete and added to the cache,
+     * or {@code null} if another process still held it when the timeout expired
+     * @throws IOException if the lease file cannot be created, or if the thread is interrupted
+     */
+    public static DownloadLease acquire(final Path cacheDir, final String uri, final long timeout, final Log log)
+            throws IOException {
+        final Path directory = cacheDir.resolve(DIRECTORY);
+        Files.createDirectories(directory);
+        final Path file = directory.resolve(DigestUtils.sha1Hex(uri.getBytes(StandardCharsets.UTF_8)) + ".lock");
+        final String owner = OWNER_PREFIX + UUID.randomUUID();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, timeout));
+        boolean waited = false;
+        long pollInterval = 50L;
+        while (true) {
+            try {
+                Files.write(Files.createFile(file), owner.getBytes(StandardCharsets.UTF_8));
+                return new DownloadLease(file, owner, waited, log);
+            } catch (FileAlreadyExistsException e) {
+                // held by another process or thread
+            }
+            if (recoverIfStale(file, log)) {
+                continue;
+            }
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0L) {
+                return null;
+            }
+            if (!waited) {
+                log.info("Waiting for another build to download " + uri);
+                waited = true;
+            }
+            try {
+                Thread.sleep(Math.min(pollInterval, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the download of " + uri);
+            }
+            pollInterval = Math.min(2 * pollInterval, MAX_POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * @return true if the lease was held by another process when it was requested, in which case the
+     * download may have been added to the cache meanwhile
+     */
+    public boolean waited() {
+        return this.waited;
+    }
+
+    /**
+     * Releases the lease, unless it was recovered by another process in the meantime.
+     */
+    @Override
+    public void close() throws IOException {
+        this.heartbeat.cancel(false);
+        if (this.owner.equals(readOwner(this.file))) {
+            Files.deleteIfExists(this.file);
+        }
+    }
+
+    private void renew() {
+        try {
+            if (this.owner.equals(readOwner(this.file))) {
+                Files.setLastModifiedTime(this.file, FileTime.fromMillis(System.currentTimeMillis()));
+                return;
+            }
+        } catch (IOException e) {
+            this.log.debug("Could not renew download lease " + this.file + ": " + e.getMessage());
+            return;
+        }
+        this.log.warn("Download lease " + this.file + " was taken over by another process");
+        this.heartbeat.cancel(false);
+    }
+
+    /**
+     * Takes a lease over if it has not been renewed for too long.
+     *
+     * @return true if the lease was removed, or was released meanwhile
+     */
+    private static boolean recoverIfStale(final Path file, final Log log) throws IOException {
+        final String owner;
+        try {
+            if (Files.getLastModifiedTime(file).toMillis()
+                    >= System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(STALE_SECONDS)) {
+                return false;
+            }
+            owner = readOwner(file);
+        } catch (NoSuchFileException e) {
+            return true;
+        }
+        final Path stale = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".stale");
+        try {
+            Files.move(file, stale, ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // recovered by another process
+            return true;
+        }
+        if (owner != null && !owner.equals(readOwner(stale))) {
+            // the stale lease was replaced by a live one between the check and the move: give it back
+            try {
+                Files.move(stale, file);
+            } catch (FileAlreadyExistsException e) {
+                // the lease is held again anyway
+            }
+            Files.deleteIfExists(stale);
+            return false;
+        }
+        Files.deleteIfExists(stale);
+        log.warn("Recovered stale download lease " + file + " held by " + owner);
+        return true;
+    }
+
+    private static String readOwner(final Path file) throws IOException {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.googlecode.download.maven.plugin.internal.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Unpacked archives, under the {@code trees} directory of the cache, so that an archive unpacked by several
+ * modules or builds is only extracted once.
+ * <p>
+ * Each tree is stored as {@code trees/<key>}, the key covering the digest of the archive and everything else the
+ * unpacked files depend on, e.g. file mappers. A tree is extracted into a staging directory, then atomically
+ * renamed into place, so that a tree found in the cache is always complete. Trees are materialized into output
+ * directories by hard-linking their files, falling back to copies on file systems which do not support links.
+ * The modification time of a tree records its last use.
+ */
+public final class ExtractedTreeCache {
+    static final String DIRECTORY = "trees";
+    static final String STAGING_SUFFIX = ".tmp";
+    static final Pattern TREE_NAME = Pattern.compile("[0-9a-f]{64}");
+    static final Pattern STAGING_NAME = Pattern.compile("[0-9a-f]{64}\\.[0-9a-f-]{36}\\.tmp");
+    private static final int BATCH_FILES = 256;
+
+    private final Path directory;
+    private final int threads;
+    private final Log log;
+    private final AtomicBoolean linksUnsupported = new AtomicBoolean();
+
+    /**
+     * Extracts an archive into a directory.
+     */
+    @FunctionalInterface
+    public interface Extraction {
+        void extractInto(Path directory) throws IOException;
+    }
+
+    /**
+     * @param cacheDir directory of the cache
+     * @param threads number of threads materializing trees, {@code 0} or less for one per available processor
+     * @param log logger
+     */
+    public ExtractedTreeCache(final Path cacheDir, final int threads, final Log log) {
+        this.directory = cacheDir.resolve(DIRECTORY);
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.log = log;
+    }
+
+    /**
+     * @param parts what the unpacked files depend on, starting with the digest of the archive
+     * @return key of the tree
+     */
+    public static String key(final String... parts) {
+        return DigestUtils.sha256Hex(String.join("\n", parts));
+    }
+
+    /**
+     * Returns the tree of the given key, extracting it first if it is not cached yet.
+     *
+     * @param key key of the tree
+     * @param extraction extracts the archive, if needed
+     * @return directory of the tree
+     * @throws IOException if the tree cannot be extracted
+     */
+    public Path get(final String key, final Extraction extraction) throws IOException {
+        final Path tree = this.directory.resolve(key);
+        if (Files.isDirectory(tree)) {
+            this.log.debug("Unpacked archive found in cache: " + tree);
+            Files.setLastModifiedTime(tree, FileTime.fromMillis(System.currentTimeMillis()));
+            return tree;
+        }
+        Files.createDirectories(this.directory);
+        final Path staging = this.directory.resolve(key + "." + UUID.randomUUID() + STAGING_SUFFIX);
+        try {
+            Files.createDirectory(staging);
+            extraction.extractInto(staging);
+            try {
+                Files.move(staging, tree, ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (!Files.isDirectory(tree)) {
+                    throw e;
+                }
+                // stored meanwhile by another process
+                this.log.debug("Unpacked archive stored concurrently: " + tree);
+            }
+        } finally {
+            delete(staging);
+        }
+        return tree;
+    }
+
+    /**
+     * Makes the files of a tree appear in a directory, replacing existing ones.
+     *
+     * @param tree directory of the tree
+     * @param destination directory to materialize the tree into
+     * @return the materialized files, relative to the destination directory
+     * @throws IOException if the files cannot be linked nor copied
+     */
+    public List<Path> materialize(final Path tree, final Path destination) throws IOException {
+        final long start = System.nanoTime();
+        final List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(tree)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                final Path relative = tree.relativize(path);
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.createDirectories(destination.resolve(relative.toString()));
+                } else {
+                    files.add(relative);
+                }
+            }
+        }
+        final AtomicInteger linked = new AtomicInteger();
+        final List<List<Path>> batches = new ArrayList<>();
+        for (int i = 0; i < files.size(); i += BATCH_FILES) {
+            batches.add(files.subList(i, Math.min(i + BATCH_FILES, files.size())));
+        }
+        this.run(batches, batch -> {
+            for (Path file : batch) {
+                if (this.place(tree.resolve(file), destination.resolve(file.toString()))) {
+                    linked.incrementAndGet();
+                }
+            }
+        });
+        this.log.info(String.format("Materialized %d cached files into %s in %.1fs (%d linked, %d copied)",
+                files.size(), destination, (System.nanoTime() - start) / 1e9, linked.get(),
+                files.size() - linked.get()));
+        return files;
+    }
+
+    /**
+     * @return true if the file was linked, false if it was copied
+     */
+    private boolean place(final Path source, final Path target) throws IOException {
+        if (Files.isSymbolicLink(source)) {
+            Files.deleteIfExists(target);
+            Files.createSymbolicLink(target, Files.readSymbolicLink(source));
+            return true;
+        }
+        if (!this.linksUnsupported.get()) {
+            Files.deleteIfExists(target);
+            try {
+                Files.createLink(target, source);
+                return true;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                if (this.linksUnsupported.compareAndSet(false, true)) {
+                    this.log.debug("Cannot link cached files, copying them instead: " + e.getMessage());
+                }
+            }
+        }
+        Files.copy(source, target, REPLACE_EXISTING, COPY_ATTRIBUTES);
+        return false;
+    }
+
+    private interface Batch {
+        void run(List<Path> files) throws IOException;
+    }
+
+    private void run(final List<List<Path>> batches, final Batch action) throws IOException {
+        final int workers = Math.min(this.threads, batches.size());
+        if (workers <= 1) {
+            for (List<Path> batch : batches) {
+                action.run(batch);
+            }
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            final Thread thread = new Thread(runnable, "tree-cache-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (List<Path> batch : batches) {
+                futures.add(executor.submit(() -> {
+                    action.run(batch);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while materializing cached files");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Deletes a directory and its content, if it exists.
+     */
+    static void delete(final Path directory) throws IOException {
+        if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
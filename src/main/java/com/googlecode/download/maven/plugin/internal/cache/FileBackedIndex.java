@@ -15,20 +15,15 @@ import org.apache.http.util.Args;
 import org.apache.maven.plugin.logging.Log;
 
 import javax.annotation.concurrent.ThreadSafe;
-import java.io.*;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
 import java.nio.file.*;
 import java.time.Instant;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import static java.time.temporal.ChronoUnit.DAYS;
 import static org.apache.http.HttpStatus.SC_OK;
@@ -37,7 +32,7 @@ import static org.apache.http.HttpVersion.HTTP_1_1;
 /**
  * Persistent cache implementation of the {@link HttpCacheStorage} interface,
  * to be used with the Apache HttpClient Cache, using a directory with
- * the copy of the files and a serialized file map.
+ * the copy of the files and a file map persisted in an {@link IndexJournal}.
  *
  * @author Paul Polishchuk
  * @since 1.3.1
@@ -46,10 +41,12 @@ import static org.apache.http.HttpVersion.HTTP_1_1;
 public final class FileBackedIndex implements HttpCacheStorage {
 
     private static final Pattern URI_REGEX = Pattern.compile("^(?:\\{.*})?([^/]+//?.*)$");
-    private static final String CACHE_FILENAME = "index.ser";
+    /**
+     * Accesses are recorded at most this often for a given entry, well within the eviction grace period.
+     */
+    private static final long TOUCH_INTERVAL = CacheJanitor.GRACE_PERIOD / 2;
     private final static StatusLine OK_STATUS_LINE = new BasicStatusLine(HTTP_1_1, SC_OK, "OK");
-    private final Map<URI, String> index = new ConcurrentHashMap<>();
-    private final Path cacheIndexFile;
+    private final IndexJournal journal;
     private final Log log;
     private final Path baseDir;
 
@@ -73,15 +70,14 @@ public final class FileBackedIndex implements HttpCacheStorage {
     }
 
     /**
-     * Creates index backed by file "index.ser" in baseDir.
-     * Throws runtime exceptions if baseDir does not exist, not a directory
-     * or file can't be created in it.
+     * Creates index backed by file "index.bin" in baseDir.
+     * An "index.ser" file written by an older version is migrated on first use.
      * @param baseDir directory where the index file should be stored.
      */
     public FileBackedIndex(final Path baseDir, Log log) throws NotDirectoryException {
         this.log = log;
         this.baseDir = baseDir;
-        this.cacheIndexFile = Paths.get(baseDir.toString(), CACHE_FILENAME);
+        this.journal = new IndexJournal(baseDir, log);
     }
 
     protected static URI asUri(String key) {
@@ -116,13 +112,7 @@ public final class FileBackedIndex implements HttpCacheStorage {
         URI uri = asUri(key);
         if (uri != null) {
             log.debug("Putting \"" + uri + "\" into cache");
-            this.index.put(uri, asPath(entry).toString());
-            try {
-                this.load(cacheIndexFile);
-            } catch (IncompatibleIndexException e) {
-                log.warn("Could not load index cache index file, it will be rewritten.");
-            }
-            this.save();
+            this.journal.put(uri, asPath(entry).toString());
         } else {
             log.warn("Could not extract an URI from key: " + key);
         }
@@ -130,74 +120,49 @@ public final class FileBackedIndex implements HttpCacheStorage {
 
     @Override
     public HttpCacheEntry getEntry(String uriString) {
+        Map<URI, String> index;
         try {
-            this.load(cacheIndexFile);
+            index = this.journal.read();
         }
         catch (IncompatibleIndexException | IOException e) {
-            log.warn("Error while reading from cache " + cacheIndexFile);
+            log.warn("Error while reading from cache " + this.journal.file());
+            return null;
         }
         URI uri = asUri(uriString);
-        if (!this.index.containsKey(uri)) {
-            log.debug("Current cache: " + this.index.keySet().stream()
-                            .map(u ->"\"" + u + "\"")
-                    .collect(Collectors.joining(", ")) + " does not contain \"" + uri + "\"");
+        String cachedPath = uri != null ? index.get(uri) : null;
+        if (cachedPath == null) {
+            log.debug("Cache does not contain \"" + uri + "\"");
             return null;
         }
-        Path cachedFile = Paths.get(this.index.get(uri));
+        Path cachedFile = Paths.get(cachedPath);
         if (!Files.exists(baseDir.resolve(cachedFile))) {
             log.warn("Cached version of " + uri + " is gone; deleting cache entry");
             try {
-                this.index.remove(uri);
-                this.save();
-                return null;
-            } catch (IncompatibleIndexException e) {
-                log.warn("Could not load index cache index file, it will be rewritten.");
+                this.journal.remove(uri);
+            } catch (IOException e) {
+                log.warn("Could not delete the cache entry of " + uri);
             }
+            return null;
         }
-        return asHttpCacheEntry(cachedFile, baseDir);
-    }
-
-    /**
-     * Loads index from the file storage replacing absent in-memory entries.
-     * @param store file where index is persisted.
-     * @throws IncompatibleIndexException is the store cannot be read due to a deserialization issue
-     */
-    @SuppressWarnings("unchecked")
-    private void load(final Path store) throws IncompatibleIndexException, IOException {
-        if (Files.exists(store) && Files.size(store) != 0L) {
-            try (
-                    final RandomAccessFile file = new RandomAccessFile(store.toFile(), "r");
-                    final FileChannel channel = file.getChannel();
-                    final FileLock ignored = channel.lock(0L, Long.MAX_VALUE, true);
-                    final ObjectInputStream deserialize = new ObjectInputStream(Files.newInputStream(store))
-            ) {
-                Map<URI, String> newEntries = (Map<URI, String>) deserialize.readObject();
-                newEntries.forEach(index::putIfAbsent);
-            } catch (final ClassNotFoundException | InvalidClassException e) {
-                throw new IncompatibleIndexException(e);
+        long now = System.currentTimeMillis();
+        if (this.journal.accessTimes().getOrDefault(uri, 0L) < now - TOUCH_INTERVAL) {
+            // recorded before the file is used, so that it is not evicted meanwhile
+            try {
+                this.journal.touch(uri, now);
+            } catch (IOException e) {
+                log.debug("Could not record the access to " + uri, e);
             }
         }
-    }
-
-    /**
-     * Saves current in-memory index to file based storage.
-     */
-    private void save() {
-        try (
-                final FileOutputStream file = new FileOutputStream(this.cacheIndexFile.toFile());
-                final ObjectOutput res = new ObjectOutputStream(file);
-                final FileChannel channel = file.getChannel();
-                final FileLock ignored = channel.lock()
-        ) {
-            res.writeObject(new HashMap<URI, String>(this.index));
-        } catch (final IOException ex) {
-            throw new IllegalStateException(ex);
-        }
+        return asHttpCacheEntry(cachedFile, baseDir);
     }
 
     @Override
-    public void removeEntry(String key) {
-        assert false; // This method should not have been called
+    public void removeEntry(String key) throws IOException {
+        URI uri = asUri(key);
+        if (uri != null) {
+            log.debug("Removing \"" + uri + "\" from cache");
+            this.journal.remove(uri);
+        }
     }
 
     @Override
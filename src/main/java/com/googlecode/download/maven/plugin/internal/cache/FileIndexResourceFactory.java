@@ -13,19 +13,39 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 /**
  * Generates {@link Resource} instances whose body is stored in a temporary file.
+ * <p>
+ * With the content-addressable layout, bodies are stored in a {@link ContentStore} instead,
+ * so that identical bodies are stored only once.
  */
 @Contract(threading = ThreadingBehavior.IMMUTABLE)
 public class FileIndexResourceFactory implements ResourceFactory {
+    /**
+     * Names of the files generated by {@link #generateUniqueCachePath(String)}: the last segment of the URI,
+     * if any, and an underscore, followed by 32 hexadecimal digits.
+     */
+    static final Pattern CACHE_FILE_NAME = Pattern.compile("(?:.*_)?[0-9a-f]{32}");
+
     private final Path cacheDir;
+    private final ContentStore contentStore;
 
     public FileIndexResourceFactory(final Path cacheDir) {
+        this(cacheDir, false);
+    }
+
+    /**
+     * @param cacheDir directory of the cache
+     * @param contentAddressable whether bodies are stored by their SHA-256 rather than under a unique name
+     */
+    public FileIndexResourceFactory(final Path cacheDir, final boolean contentAddressable) {
         super();
         this.cacheDir = cacheDir;
+        this.contentStore = contentAddressable ? new ContentStore(cacheDir) : null;
     }
 
     protected Path generateUniqueCachePath(final String uri) {
@@ -48,15 +68,49 @@ public class FileIndexResourceFactory implements ResourceFactory {
         if (!Files.exists(cacheDir)) {
             Files.createDirectories(cacheDir);
         }
+        if (this.contentStore != null) {
+            return new FileIndexResource(this.contentStore.store(inStream), cacheDir);
+        }
         final Path cachedFile = generateUniqueCachePath(requestId);
         Files.copy(inStream, cacheDir.resolve(cachedFile), REPLACE_EXISTING);
         return new FileIndexResource(cachedFile, cacheDir);
     }
 
+    /**
+     * Generates a resource from a file of the cache directory, which is moved into place rather than copied.
+     *
+     * @param requestId request URI
+     * @param file file holding the body, in the cache directory
+     * @return the resource
+     * @throws IOException if the file cannot be moved or stored
+     */
+    public Resource adopt(final String requestId, final Path file) throws IOException {
+        if (this.contentStore != null) {
+            try (InputStream in = Files.newInputStream(file)) {
+                return new FileIndexResource(this.contentStore.store(in), cacheDir);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+        final Path cachedFile = generateUniqueCachePath(requestId);
+        Files.move(file, cacheDir.resolve(cachedFile), REPLACE_EXISTING);
+        return new FileIndexResource(cachedFile, cacheDir);
+    }
+
     @Override
     public Resource copy(
             final String requestId,
             final Resource resource) throws IOException {
+        if (this.contentStore != null) {
+            if (resource instanceof FileIndexResource
+                    && ContentStore.contains(((FileIndexResource) resource).getPath())) {
+                // blobs are immutable, so they can be shared
+                return new FileIndexResource(((FileIndexResource) resource).getPath(), cacheDir);
+            }
+            try (InputStream is = resource.getInputStream()) {
+                return new FileIndexResource(this.contentStore.store(is), cacheDir);
+            }
+        }
         final Path dst = generateUniqueCachePath(requestId);
 
         if (resource instanceof FileIndexResource) {
@@ -0,0 +1,556 @@
+package com.googlecode.download.maven.plugin.internal.cache;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only binary journal persisting the cache index.
+ * <p>
+ * The file starts with a header (magic number, format version and generation) followed by records,
+ * each one adding, removing or recording an access to a single entry. Adding an entry appends one record instead of
+ * rewriting the whole index. The journal is compacted, i.e. rewritten with one record per live entry
+ * and a new generation, once it holds much more records than entries or if a torn record is found.
+ * <p>
+ * Each record is framed by its length and a CRC32, so that a record torn by a crashed writer is detected
+ * and dropped. Writers exclusively lock a separate lock file, while readers share it,
+ * which allows the journal to be replaced atomically on compaction.
+ * <p>
+ * The parsed entries are kept in memory and shared by all journals of the same directory within the JVM.
+ * They are refreshed only when the size, modification time or file key of the journal changes: records
+ * appended since the last refresh are replayed, unless the generation changed, in which case the whole file
+ * is read again.
+ * <p>
+ * The legacy Java-serialized {@code index.ser} is migrated when no journal exists yet. It is left in place
+ * for older versions of the plugin.
+ */
+final class IndexJournal {
+    static final String FILENAME = "index.bin";
+    static final String LEGACY_FILENAME = "index.ser";
+    static final String LOCK_FILENAME = "index.lock";
+
+    private static final int MAGIC = 0x444d5049;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte TOUCH = 3;
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private static final Map<Path, State> STATES = new ConcurrentHashMap<>();
+
+    private final Path baseDir;
+    private final Path file;
+    private final Path lockFile;
+    private final State state;
+    private final Log log;
+
+    IndexJournal(Path baseDir, Log log) {
+        this.baseDir = baseDir;
+        this.file = baseDir.resolve(FILENAME);
+        this.lockFile = baseDir.resolve(LOCK_FILENAME);
+        this.state = STATES.computeIfAbsent(realPath(baseDir), ignored -> new State());
+        this.log = log;
+    }
+
+    /**
+     * Returns the real path of a directory, or of its closest existing ancestor followed by the remaining names,
+     * so that journals opened through symbolic links share the state of the directory they point to.
+     * Two states for the same lock file would make the JVM reject the second lock.
+     */
+    private static Path realPath(Path directory) {
+        final Path absolute = directory.toAbsolutePath().normalize();
+        Path existing = absolute;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null) {
+            return absolute;
+        }
+        try {
+            return existing.toRealPath().resolve(existing.relativize(absolute));
+        } catch (IOException e) {
+            return absolute;
+        }
+    }
+
+    /**
+     * Drops the state shared by the journals of the given directory, so that the next journal opened
+     * on it behaves like one of another JVM.
+     *
+     * @param baseDir cache directory
+     */
+    static void forget(Path baseDir) {
+        STATES.remove(realPath(baseDir));
+    }
+
+    /**
+     * @return path of the journal file
+     */
+    Path file() {
+        return this.file;
+    }
+
+    /**
+     * Returns all live entries, refreshing them first if the journal was changed,
+     * and migrating the legacy index if needed.
+     *
+     * @return live entries, not to be modified
+     * @throws IncompatibleIndexException if the journal was written in an unknown format
+     * @throws IOException if the journal cannot be read
+     */
+    Map<URI, String> read() throws IOException {
+        final BasicFileAttributes attributes = attributes(this.file);
+        if (attributes == null) {
+            if (!Files.exists(this.baseDir.resolve(LEGACY_FILENAME))) {
+                return Collections.emptyMap();
+            }
+            this.locked(false, this::migrateIfAbsent);
+        } else if (this.state.isCurrent(attributes)) {
+            return this.state.view;
+        }
+        this.locked(true, this::replay);
+        if (this.state.needsCompaction()) {
+            this.locked(false, () -> {
+                this.replay();
+                if (this.state.needsCompaction()) {
+                    this.compact();
+                }
+                return null;
+            });
+        }
+        return this.state.view;
+    }
+
+    /**
+     * Returns the last access time of the live entries, as refreshed by the last {@link #read()}.
+     *
+     * @return last access time of each entry, in milliseconds since the epoch; {@code 0} if unknown
+     */
+    Map<URI, Long> accessTimes() {
+        return Collections.unmodifiableMap(this.state.accessed);
+    }
+
+    /**
+     * Appends a record adding or replacing an entry.
+     *
+     * @param uri key of the entry
+     * @param path path of the cached file, relative to the cache directory
+     * @throws IOException if the journal cannot be written
+     */
+    void put(URI uri, String path) throws IOException {
+        this.put(uri, path, System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a record adding or replacing an entry last accessed at the given time.
+     */
+    void put(URI uri, String path, long time) throws IOException {
+        this.append(record(PUT, uri, path, time));
+    }
+
+    /**
+     * Appends a record removing an entry.
+     *
+     * @param uri key of the entry
+     * @throws IOException if the journal cannot be written
+     */
+    void remove(URI uri) throws IOException {
+        this.append(record(REMOVE, uri, null, 0L));
+    }
+
+    /**
+     * Appends a record of an access to an entry.
+     *
+     * @param uri key of the entry
+     * @param time access time, in milliseconds since the epoch
+     * @throws IOException if the journal cannot be written
+     */
+    void touch(URI uri, long time) throws IOException {
+        this.append(record(TOUCH, uri, null, time));
+    }
+
+    /**
+     * Removes the given entries, unless they were accessed in the meantime.
+     * Access times are checked while holding the exclusive lock, after catching up with other writers.
+     *
+     * @param candidates keys of the entries to remove
+     * @param accessedBefore only entries last accessed before this time, in milliseconds since the epoch,
+     * are removed
+     * @return keys of the removed entries
+     * @throws IOException if the journal cannot be written
+     */
+    List<URI> removeIf(Collection<URI> candidates, long accessedBefore) throws IOException {
+        if (candidates.isEmpty() || !Files.exists(this.file)) {
+            return Collections.emptyList();
+        }
+        return this.locked(false, () -> {
+            this.replay();
+            final ByteArrayOutputStream records = new ByteArrayOutputStream();
+            final List<URI> removed = new ArrayList<>();
+            for (URI uri : candidates) {
+                if (this.state.entries.containsKey(uri)
+                        && this.state.accessed.getOrDefault(uri, 0L) < accessedBefore) {
+                    records.write(record(REMOVE, uri, null, 0L));
+                    removed.add(uri);
+                }
+            }
+            if (!removed.isEmpty()) {
+                this.write(records.toByteArray());
+            }
+            return removed;
+        });
+    }
+
+    private void append(byte[] record) throws IOException {
+        if (!Files.isDirectory(this.baseDir)) {
+            // fails on an existing symbolic link, even to a directory
+            Files.createDirectories(this.baseDir);
+        }
+        this.locked(false, () -> {
+            this.migrateIfAbsent();
+            this.write(record);
+            return null;
+        });
+    }
+
+    /**
+     * Appends records to the journal. Must hold the exclusive lock.
+     */
+    private void write(byte[] records) throws IOException {
+        this.replay();
+        if (this.state.needsCompaction()) {
+            // also drops a torn record, which would otherwise hide the appended ones
+            this.compact();
+        }
+        try (FileChannel channel = FileChannel.open(this.file, WRITE, APPEND)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        this.replay();
+    }
+
+    /**
+     * Creates the journal, with the content of the legacy index if there is one. Must hold the exclusive lock.
+     */
+    private Void migrateIfAbsent() throws IOException {
+        if (Files.exists(this.file)) {
+            return null;
+        }
+        final Map<URI, String> entries = this.legacyEntries();
+        if (!entries.isEmpty()) {
+            this.log.debug("Migrating " + entries.size() + " entries from " + this.baseDir.resolve(LEGACY_FILENAME));
+        }
+        this.write(1L, entries, Collections.emptyMap());
+        return null;
+    }
+
+    /**
+     * @return entries of the legacy index, which may still be used by older versions of the plugin
+     */
+    Map<URI, String> legacyEntries() throws IOException {
+        final Path legacy = this.baseDir.resolve(LEGACY_FILENAME);
+        if (Files.exists(legacy) && Files.size(legacy) != 0L) {
+            try {
+                return readLegacy(legacy);
+            } catch (IncompatibleIndexException e) {
+                this.log.warn("Could not read the legacy cache index " + legacy + ", it will be ignored.");
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Rewrites the journal with one record per live entry. Must hold the exclusive lock
+     * and the state must be up to date.
+     */
+    private void compact() throws IOException {
+        if (this.log.isDebugEnabled()) {
+            this.log.debug("Compacting " + this.file + ": " + this.state.records + " records, "
+                    + this.state.entries.size() + " entries");
+        }
+        this.write(this.state.generation + 1, this.state.entries, this.state.accessed);
+        this.replay();
+    }
+
+    private void write(long generation, Map<URI, String> entries, Map<URI, Long> accessed) throws IOException {
+        final Path tmp = Files.createTempFile(this.baseDir, FILENAME, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, WRITE, TRUNCATE_EXISTING);
+                 OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)) {
+                final DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeLong(generation);
+                for (Map.Entry<URI, String> entry : entries.entrySet()) {
+                    out.write(record(PUT, entry.getKey(), entry.getValue(),
+                            accessed.getOrDefault(entry.getKey(), 0L)));
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, this.file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Brings the shared state up to date with the journal file: records appended since the last replay
+     * are applied to the current entries, the whole file is read again if it was replaced. Must hold a lock.
+     */
+    private Void replay() throws IOException {
+        final State state = this.state;
+        final BasicFileAttributes attributes = attributes(this.file);
+        if (attributes == null) {
+            state.reset(new ConcurrentHashMap<>(), 0L);
+            state.update(null, HEADER_SIZE);
+            return null;
+        }
+        if (state.isCurrent(attributes)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(this.file), 64 * 1024))) {
+            final long generation;
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IncompatibleIndexException(new IOException("Not a cache index: " + this.file));
+                }
+                final int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IncompatibleIndexException(
+                            new IOException("Unsupported cache index version " + version + ": " + this.file));
+                }
+                generation = in.readLong();
+            } catch (EOFException e) {
+                state.reset(new ConcurrentHashMap<>(), 0L);
+                state.torn = true;
+                state.update(attributes, HEADER_SIZE);
+                return null;
+            }
+            final Map<URI, String> entries;
+            long offset;
+            if (generation == state.generation && Objects.equals(attributes.fileKey(), state.fileKey)
+                    && attributes.size() >= state.offset) {
+                // same file, only appended to since the last replay
+                entries = state.entries;
+                offset = state.offset;
+                skipFully(in, offset - HEADER_SIZE);
+                state.torn = false;
+            } else {
+                entries = new ConcurrentHashMap<>();
+                offset = HEADER_SIZE;
+                state.reset(entries, generation);
+            }
+            final CRC32 crc = new CRC32();
+            while (true) {
+                final int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                final byte[] body;
+                try {
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        throw new EOFException();
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+                    crc.reset();
+                    crc.update(body, 0, body.length);
+                    if ((int) crc.getValue() != in.readInt()) {
+                        throw new EOFException();
+                    }
+                } catch (EOFException e) {
+                    state.torn = true;
+                    break;
+                }
+                final DataInputStream data = new DataInputStream(new ByteArrayInputStream(body));
+                final byte type = data.readByte();
+                final URI uri = URI.create(data.readUTF());
+                if (type == PUT) {
+                    entries.put(uri, data.readUTF());
+                    state.accessed.put(uri, data.available() >= 8 ? data.readLong() : 0L);
+                } else if (type == REMOVE) {
+                    entries.remove(uri);
+                    state.accessed.remove(uri);
+                } else if (type == TOUCH && entries.containsKey(uri)) {
+                    state.accessed.merge(uri, data.readLong(), Math::max);
+                }
+                ++state.records;
+                offset += length + 8L;
+            }
+            state.update(attributes, offset);
+        }
+        return null;
+    }
+
+    private <T> T locked(boolean shared, IOAction<T> action) throws IOException {
+        // file locks are held by the JVM, so threads of the same JVM are serialized beforehand
+        this.state.lock.lock();
+        try {
+            if (shared && !Files.isDirectory(this.baseDir)) {
+                return action.run();
+            }
+            try (FileChannel channel = FileChannel.open(this.lockFile, CREATE, READ, WRITE);
+                 FileLock ignored = channel.lock(0L, Long.MAX_VALUE, shared)) {
+                return action.run();
+            }
+        } finally {
+            this.state.lock.unlock();
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static byte[] record(byte type, URI uri, String path, long time) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(type);
+        body.writeUTF(uri.toString());
+        if (path != null) {
+            body.writeUTF(path);
+        }
+        if (type != REMOVE) {
+            body.writeLong(time);
+        }
+        body.flush();
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        final ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.size() + 8);
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        return record.toByteArray();
+    }
+
+    private static Map<URI, String> readLegacy(Path legacy) throws IOException {
+        try (InputStream in = Files.newInputStream(legacy);
+             ObjectInputStream deserialize = new ObjectInputStream(in)) {
+            final Map<?, ?> legacyEntries = (Map<?, ?>) deserialize.readObject();
+            final Map<URI, String> entries = new HashMap<>();
+            legacyEntries.forEach((key, value) -> {
+                final URI uri = key instanceof URI ? (URI) key : FileBackedIndex.asUri(String.valueOf(key));
+                if (uri != null && value != null) {
+                    entries.put(uri, value.toString());
+                }
+            });
+            return entries;
+        } catch (ClassNotFoundException | InvalidClassException | ClassCastException e) {
+            throw new IncompatibleIndexException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOAction<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Entries of a journal shared within the JVM, along with what is needed to detect changes of the file.
+     * Only modified while holding the lock; the entries may be read at any time.
+     */
+    private static final class State {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile Map<URI, String> entries = new ConcurrentHashMap<>();
+        private volatile Map<URI, String> view = Collections.unmodifiableMap(this.entries);
+        private volatile Map<URI, Long> accessed = new ConcurrentHashMap<>();
+        private volatile long size = -1L;
+        private volatile FileTime modified;
+        private volatile Object fileKey;
+        private long generation = -1L;
+        private long offset = HEADER_SIZE;
+        private int records;
+        private boolean torn;
+
+        private boolean isCurrent(BasicFileAttributes attributes) {
+            return attributes.size() == this.size
+                    && attributes.lastModifiedTime().equals(this.modified)
+                    && Objects.equals(attributes.fileKey(), this.fileKey);
+        }
+
+        private boolean needsCompaction() {
+            return this.torn || this.records > Math.max(MIN_COMPACTION_RECORDS, 2 * this.entries.size());
+        }
+
+        private void reset(Map<URI, String> entries, long generation) {
+            this.entries = entries;
+            this.accessed = new ConcurrentHashMap<>();
+            this.view = Collections.unmodifiableMap(entries);
+            this.generation = generation;
+            this.offset = HEADER_SIZE;
+            this.records = 0;
+            this.torn = false;
+        }
+
+        private void update(BasicFileAttributes attributes, long offset) {
+            this.offset = offset;
+            this.modified = attributes != null ? attributes.lastModifiedTime() : null;
+            this.fileKey = attributes != null ? attributes.fileKey() : null;
+            this.size = attributes != null ? attributes.size() : -1L;
+        }
+    }
+}
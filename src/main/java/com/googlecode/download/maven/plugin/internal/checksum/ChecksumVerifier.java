@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012, Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.download.maven.plugin.internal.checksum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Computes the supplied checksums over content as it is being written,
+ * so that the content does not need to be read again to be verified.
+ * <p>
+ * Files are read only once whatever the number of supplied checksums: each chunk is fanned out
+ * to all digests. For big files with several checksums, the digests run on separate threads while
+ * the next chunk is being read.
+ */
+public final class ChecksumVerifier {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Files bigger than this are digested on separate threads when several checksums are supplied.
+     */
+    private static final long PARALLEL_THRESHOLD = 16L * 1024 * 1024;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "download-checksum");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Checksum, String> expected;
+
+    private final Map<Checksum, MessageDigest> digests = new EnumMap<>(Checksum.class);
+
+    ChecksumVerifier(final Map<Checksum, String> expected) {
+        this.expected = expected;
+        for (final Checksum checksum : expected.keySet()) {
+            try {
+                this.digests.put(checksum, MessageDigest.getInstance(checksum.algo()));
+            } catch (final NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * @return True if there is nothing to verify.
+     */
+    public boolean isEmpty() {
+        return this.digests.isEmpty();
+    }
+
+    /**
+     * Feeds a chunk of content to all digests.
+     * @param buffer Content.
+     * @param offset Offset of the chunk in the buffer.
+     * @param length Length of the chunk.
+     */
+    public void update(final byte[] buffer, final int offset, final int length) {
+        for (final MessageDigest digest : this.digests.values()) {
+            digest.update(buffer, offset, length);
+        }
+    }
+
+    /**
+     * Feeds the beginning of a file to all digests, e.g. the part of a download
+     * written by a previous attempt.
+     * @param file File to read.
+     * @param length Number of bytes to read from the beginning of the file,
+     *  the file is not opened if it is {@code 0}, so that it need not exist.
+     * @throws IOException If the file cannot be read.
+     */
+    public void update(final Path file, final long length) throws IOException {
+        if (this.isEmpty() || length <= 0) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            if (this.digests.size() > 1 && length > PARALLEL_THRESHOLD) {
+                this.updateInParallel(in, length);
+            } else {
+                final byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, length)];
+                long remaining = length;
+                int read;
+                while (remaining > 0 && (read = readChunk(in, buffer, remaining)) > 0) {
+                    this.update(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads chunks into two alternating buffers: while every digest consumes the current chunk
+     * on its own thread, the next chunk is read.
+     */
+    private void updateInParallel(final InputStream in, final long length) throws IOException {
+        final byte[][] buffers = {new byte[BUFFER_SIZE], new byte[BUFFER_SIZE]};
+        final List<Future<?>> pending = new ArrayList<>(this.digests.size());
+        long remaining = length;
+        int current = 0;
+        int read = readChunk(in, buffers[current], remaining);
+        while (read > 0) {
+            final byte[] chunk = buffers[current];
+            final int size = read;
+            for (final MessageDigest digest : this.digests.values()) {
+                pending.add(EXECUTOR.submit(() -> digest.update(chunk, 0, size)));
+            }
+            remaining -= size;
+            current ^= 1;
+            read = remaining > 0 ? readChunk(in, buffers[current], remaining) : 0;
+            try {
+                for (final Future<?> future : pending) {
+                    future.get();
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Checksum computation interrupted");
+            } catch (final ExecutionException ex) {
+                throw new IOException(ex.getCause());
+            } finally {
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Fills the buffer as much as possible.
+     * @return Number of bytes read, {@code 0} at the end of the stream.
+     */
+    private static int readChunk(final InputStream in, final byte[] buffer, final long remaining)
+        throws IOException {
+        final int size = (int) Math.min(buffer.length, remaining);
+        int total = 0;
+        int read;
+        while (total < size && (read = in.read(buffer, total, size - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Compares the computed digests with the supplied checksums.
+     * @throws MojoFailureException If any digest does not match.
+     */
+    public void verify() throws MojoFailureException {
+        for (final Map.Entry<Checksum, MessageDigest> entry : this.digests.entrySet()) {
+            final String expectedDigest = this.expected.get(entry.getKey());
+            final String actualDigestHex = new String(Hex.encodeHex(entry.getValue().digest()));
+            if (!actualDigestHex.equals(expectedDigest)) {
+                throw new MojoFailureException("Not same digest as expected: expected <" + expectedDigest
+                    + "> was <" + actualDigestHex + ">");
+            }
+        }
+    }
+}
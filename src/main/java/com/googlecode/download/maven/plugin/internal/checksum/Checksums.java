@@ -15,12 +15,13 @@
  */
 package com.googlecode.download.maven.plugin.internal.checksum;
 
-import com.googlecode.download.maven.plugin.internal.ChecksumUtils;
 import java.io.File;
-import java.security.MessageDigest;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.EnumMap;
 import java.util.Map;
 import javax.annotation.Nullable;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 
 /**
@@ -31,16 +32,38 @@ public final class Checksums {
 
     private final Map<Checksum, String> supplied;
 
+    @Nullable
+    private final VerifiedDigestStore store;
+
+    private final Log log;
+
     public Checksums(
         @Nullable final String md5, @Nullable final String sha1,
         @Nullable final String sha256, @Nullable final String sha512,
         Log log
+    ) {
+        this(md5, sha1, sha256, sha512, null, log);
+    }
+
+    /**
+     * @param md5 Supplied md5 checksum, may be {@literal null}.
+     * @param sha1 Supplied sha1 checksum, may be {@literal null}.
+     * @param sha256 Supplied sha256 checksum, may be {@literal null}.
+     * @param sha512 Supplied sha512 checksum, may be {@literal null}.
+     * @param store Digests of already verified files, may be {@literal null}
+     *  to always hash files.
+     * @param log Logger.
+     */
+    public Checksums(
+        @Nullable final String md5, @Nullable final String sha1,
+        @Nullable final String sha256, @Nullable final String sha512,
+        @Nullable final VerifiedDigestStore store, Log log
     ) {
         this.supplied = Checksums.create(md5, sha1, sha256, sha512);
+        this.store = store;
+        this.log = log;
         if (this.supplied.isEmpty()) {
             log.debug("No checksums were supplied, skipping file validation");
-        } else if (this.supplied.size() > 1) {
-            log.warn("More than one checksum is supplied. This may be slow for big files. Consider using a single checksum.");
         }
     }
 
@@ -61,17 +84,62 @@ public final class Checksums {
     }
 
     /**
-     * Validates the file with supplied checksums.
+     * Validates the file with supplied checksums. The file is read only once,
+     * whatever the number of supplied checksums, and not at all if it was
+     * already verified and has not changed since.
      * @param file File to validate.
      * @throws Exception If the file didn't match any supplied checksum.
      */
     public void validate(final File file) throws Exception {
-        for (final Map.Entry<Checksum, String> entry : this.supplied.entrySet()) {
-            ChecksumUtils.verifyChecksum(
-                file, entry.getValue(),
-                MessageDigest.getInstance(entry.getKey().algo())
-            );
+        if (this.supplied.isEmpty()) {
+            return;
+        }
+        if (this.store != null) {
+            try {
+                if (this.store.isVerified(file, this.supplied)) {
+                    this.log.debug("File " + file.getName() + " is unchanged since its last verification");
+                    return;
+                }
+            } catch (final IOException ex) {
+                this.log.debug("Could not read the verified digests of " + file.getName(), ex);
+            }
+        }
+        final ChecksumVerifier verifier = this.verifier();
+        verifier.update(file.toPath(), Files.size(file.toPath()));
+        try {
+            verifier.verify();
+        } catch (final MojoFailureException ex) {
+            if (this.store != null) {
+                this.store.forget(file);
+            }
+            throw ex;
         }
+        this.record(file);
+    }
+
+    /**
+     * Records that the file matches the supplied checksums, so that it is
+     * not hashed again by {@link #validate(File)} as long as it is unchanged.
+     * Does nothing if there is no digest store or no checksums were supplied.
+     * @param file File which was verified, e.g. while it was downloaded.
+     */
+    public void record(final File file) {
+        if (this.store == null || this.supplied.isEmpty()) {
+            return;
+        }
+        try {
+            this.store.record(file, this.supplied);
+        } catch (final IOException ex) {
+            this.log.debug("Could not record the verified digests of " + file.getName(), ex);
+        }
+    }
+
+    /**
+     * Creates a verifier computing the supplied checksums over content as it is written.
+     * @return A new verifier, which verifies nothing if no checksums were supplied.
+     */
+    public ChecksumVerifier verifier() {
+        return new ChecksumVerifier(this.supplied);
     }
 
     /**
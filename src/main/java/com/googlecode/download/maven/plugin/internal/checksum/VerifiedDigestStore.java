@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012, Red Hat Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.download.maven.plugin.internal.checksum;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.regex.Pattern;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Digests of files which were already verified, so that an unchanged file
+ * does not need to be hashed again on every build.
+ * <p>
+ * Each verified file gets a small properties file named after its canonical path,
+ * holding the size, modification time and file key (inode) of the file when it was verified,
+ * along with the digests it matched. A file is considered unchanged if all of these
+ * attributes are still the same. Entries of files which were deleted or changed since are dropped
+ * by {@link #prune(long)}.
+ */
+public final class VerifiedDigestStore {
+
+    /**
+     * Name of the store directory within the cache directory.
+     */
+    public static final String DIRECTORY = "checksums";
+
+    private static final Pattern ENTRY_NAME = Pattern.compile("[0-9a-f]{40}\\.properties");
+    private static final Pattern TEMPORARY_NAME = Pattern.compile("[0-9a-f]{40}\\.properties[0-9]+\\.tmp");
+
+    private static final String PATH_KEY = "path";
+    private static final String SIZE_KEY = "size";
+    private static final String MODIFIED_KEY = "lastModified";
+    private static final String FILE_KEY = "fileKey";
+
+    private final Path directory;
+
+    private final boolean rehash;
+
+    /**
+     * @param directory Directory holding the verified digests.
+     * @param rehash If true, recorded digests are never trusted and files
+     *  are always hashed again; successful verifications are still recorded.
+     */
+    public VerifiedDigestStore(final File directory, final boolean rehash) {
+        this.directory = directory.toPath();
+        this.rehash = rehash;
+    }
+
+    /**
+     * Checks whether the file was verified against the given digests and has not changed since.
+     * @param file File to check.
+     * @param digests Expected digests.
+     * @return True if the file can be accepted without hashing it.
+     * @throws IOException If the file attributes or the store cannot be read.
+     */
+    boolean isVerified(final File file, final Map<Checksum, String> digests) throws IOException {
+        if (this.rehash) {
+            return false;
+        }
+        final Path entry = this.entry(file);
+        if (!Files.isRegularFile(entry)) {
+            return false;
+        }
+        final Properties recorded = load(entry);
+        if (!this.isUnchanged(file, recorded)) {
+            return false;
+        }
+        for (final Map.Entry<Checksum, String> digest : digests.entrySet()) {
+            if (!digest.getValue().equals(recorded.getProperty(digest.getKey().name()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that the file matches the given digests.
+     * @param file Verified file.
+     * @param digests Digests the file matched.
+     * @throws IOException If the file attributes cannot be read or the store cannot be written.
+     */
+    void record(final File file, final Map<Checksum, String> digests) throws IOException {
+        final Properties properties = this.describe(file);
+        for (final Map.Entry<Checksum, String> digest : digests.entrySet()) {
+            properties.setProperty(digest.getKey().name(), digest.getValue());
+        }
+        Files.createDirectories(this.directory);
+        final Path entry = this.entry(file);
+        final Path tmp = Files.createTempFile(this.directory, entry.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Forgets any digest recorded for the file.
+     * @param file File which did not match its digests.
+     * @throws IOException If the store cannot be written.
+     */
+    void forget(final File file) throws IOException {
+        Files.deleteIfExists(this.entry(file));
+    }
+
+    /**
+     * Drops the entries of files which were deleted or changed since they were verified,
+     * e.g. cached files which were evicted, along with temporary files of interrupted records.
+     * @param cutoff Entries modified at or after this time, in milliseconds, are kept,
+     *  so that an entry being recorded by another process is left alone.
+     * @return Number of deleted entries.
+     * @throws IOException If the store cannot be read or written.
+     */
+    public int prune(final long cutoff) throws IOException {
+        if (!Files.isDirectory(this.directory)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory,
+            entry -> Files.isRegularFile(entry) && Files.getLastModifiedTime(entry).toMillis() < cutoff)) {
+            for (final Path entry : entries) {
+                final String name = entry.getFileName().toString();
+                if (TEMPORARY_NAME.matcher(name).matches()
+                        || ENTRY_NAME.matcher(name).matches() && this.isStale(entry)) {
+                    deleted += Files.deleteIfExists(entry) ? 1 : 0;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private boolean isStale(final Path entry) throws IOException {
+        final Properties recorded;
+        try {
+            recorded = load(entry);
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        final String path = recorded.getProperty(PATH_KEY);
+        if (path == null || !Files.isRegularFile(Paths.get(path))) {
+            return true;
+        }
+        return !this.isUnchanged(new File(path), recorded);
+    }
+
+    private boolean isUnchanged(final File file, final Properties recorded) throws IOException {
+        final Properties current = this.describe(file);
+        for (final String key : current.stringPropertyNames()) {
+            if (!current.getProperty(key).equals(recorded.getProperty(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Properties load(final Path entry) throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(entry)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private Path entry(final File file) throws IOException {
+        return this.directory.resolve(
+            DigestUtils.sha1Hex(file.getCanonicalPath().getBytes(StandardCharsets.UTF_8)) + ".properties"
+        );
+    }
+
+    private Properties describe(final File file) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        final Properties properties = new Properties();
+        properties.setProperty(PATH_KEY, file.getCanonicalPath());
+        properties.setProperty(SIZE_KEY, Long.toString(attributes.size()));
+        properties.setProperty(MODIFIED_KEY, attributes.lastModifiedTime().toString());
+        properties.setProperty(FILE_KEY, Objects.toString(attributes.fileKey(), ""));
+        return properties;
+    }
+}
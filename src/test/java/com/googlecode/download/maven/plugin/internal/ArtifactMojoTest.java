@@ -0,0 +1,379 @@
+package com.googlecode.download.maven.plugin.internal;
+
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.ReflectionUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.CollectResult;
+import org.eclipse.aether.collection.DependencyCollectionContext;
+import org.eclipse.aether.collection.DependencySelector;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link ArtifactMojo}
+ */
+public class ArtifactMojoTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, List<Dependency>> graph = new HashMap<>();
+    private final List<String> resolved = new CopyOnWriteArrayList<>();
+    private final AtomicInteger resolving = new AtomicInteger();
+    private final AtomicInteger maxResolving = new AtomicInteger();
+    private CountDownLatch siblings = new CountDownLatch(0);
+    private RepositorySystem repositorySystem;
+    private File outputDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        // app -> lib, junit; lib -> util
+        this.graph.put("app", dependencies("g:lib:1", "g:junit:1"));
+        this.graph.put("lib", dependencies("g:util:1"));
+        this.outputDirectory = this.temporaryFolder.newFolder("output");
+        this.repositorySystem = mock(RepositorySystem.class);
+        when(this.repositorySystem.collectDependencies(any(), any())).thenAnswer(invocation ->
+                this.collect(invocation.<RepositorySystemSession>getArgument(0),
+                        invocation.<CollectRequest>getArgument(1)));
+        when(this.repositorySystem.resolveArtifact(any(), any())).thenAnswer(invocation ->
+                this.resolve(invocation.getArgument(1)));
+    }
+
+    /**
+     * Without a dependency depth, only the requested artifact should be resolved, without collecting its graph.
+     */
+    @Test
+    public void testNoDependencies() throws Exception {
+        createMojo(m -> { }).execute();
+        assertThat(this.resolved, contains("g:app:jar::1"));
+        verify(this.repositorySystem, never()).collectDependencies(any(), any());
+    }
+
+    /**
+     * Coordinates should be parsed with the type and classifier as optional parts.
+     */
+    @Test
+    public void testArtifactCoordinates() throws Exception {
+        createMojo(m -> requesting(m, "g:a:1", " g:b:2:zip , g:c:3:jar:sources", "g:d:4:test-jar:tests")).execute();
+        assertThat(this.resolved, containsInAnyOrder(
+                "g:a:jar::1", "g:b:zip::2", "g:c:jar:sources:3", "g:d:test-jar:tests:4"));
+        assertThat(this.outputFiles(), containsInAnyOrder(
+                "a-1.jar", "b-2.zip", "c-3-sources.jar", "d-4-tests.test-jar"));
+    }
+
+    @Test
+    public void testInvalidArtifactCoordinates() throws Exception {
+        for (String coordinates : new String[] {"g:a", "g::1", "g:a:1:jar:sources:extra", "g:a:1:"}) {
+            try {
+                createMojo(m -> requesting(m, coordinates)).execute();
+                fail("The coordinates " + coordinates + " should be rejected");
+            } catch (MojoExecutionException e) {
+                assertThat(e.getMessage(), containsString(coordinates));
+            }
+        }
+        assertThat(this.resolved, is(empty()));
+    }
+
+    /**
+     * An artifact requested several times should be resolved and copied once.
+     */
+    @Test
+    public void testRequestedArtifactsWithoutDuplicates() throws Exception {
+        createMojo(m -> setVariableValueToObject(m, "artifacts",
+                new String[] {"g:app:1,g:lib:1", "g:lib:1:jar", "g:app:1"})).execute();
+        assertThat(this.resolved, containsInAnyOrder("g:app:jar::1", "g:lib:jar::1"));
+        assertThat(this.outputFiles(), containsInAnyOrder("app-1.jar", "lib-1.jar"));
+    }
+
+    /**
+     * The dependencies of all the requested artifacts should be collected at once, those of a requested artifact
+     * which is also a dependency of another one being followed from the requested one.
+     */
+    @Test
+    public void testRequestedArtifactsWithDependencies() throws Exception {
+        this.graph.put("other", dependencies("g:util:1", "g:tool:1"));
+        createMojo(m -> {
+            requesting(m, "g:app:1", "g:other:1", "g:lib:1");
+            setVariableValueToObject(m, "dependencyDepth", 1L);
+        }).execute();
+        assertThat(this.resolved, containsInAnyOrder("g:app:jar::1", "g:other:jar::1", "g:lib:jar::1",
+                "g:junit:jar::1", "g:util:jar::1", "g:tool:jar::1"));
+        verify(this.repositorySystem, times(1)).collectDependencies(any(), any());
+    }
+
+    /**
+     * Dependencies should be downloaded down to the dependency depth.
+     */
+    @Test
+    public void testDependencyDepth() throws Exception {
+        createMojo(m -> setVariableValueToObject(m, "dependencyDepth", 1L)).execute();
+        assertThat(this.outputFiles(), containsInAnyOrder("app-1.jar", "lib-1.jar", "junit-1.jar"));
+
+        createMojo(m -> setVariableValueToObject(m, "dependencyDepth", 2L)).execute();
+        assertThat(this.outputFiles(), containsInAnyOrder("app-1.jar", "lib-1.jar", "junit-1.jar", "util-1.jar"));
+    }
+
+    /**
+     * By default, dependencies of all scopes, optional ones included, should be downloaded.
+     */
+    @Test
+    public void testNoDependencyFilteredByDefault() throws Exception {
+        this.graph.put("app", scopedDependencies());
+        createMojo(m -> setVariableValueToObject(m, "dependencyDepth", 1L)).execute();
+        assertThat(this.outputFiles(), containsInAnyOrder("app-1.jar", "lib-1.jar", "junit-1.jar", "servlet-1.jar",
+                "optional-1.jar"));
+    }
+
+    /**
+     * Dependencies should be left out as Maven does when asked to.
+     */
+    @Test
+    public void testDependencyFilters() throws Exception {
+        this.graph.put("app", scopedDependencies());
+        createMojo(m -> {
+            setVariableValueToObject(m, "dependencyDepth", 1L);
+            setVariableValueToObject(m, "excludeScopes", new String[] {"test", "provided", "system"});
+            setVariableValueToObject(m, "includeOptional", false);
+        }).execute();
+        assertThat(this.outputFiles(), containsInAnyOrder("app-1.jar", "lib-1.jar"));
+    }
+
+    /**
+     * Sibling dependencies should be resolved concurrently, on no more than {@code resolverThreads} threads.
+     */
+    @Test(timeout = 30000L)
+    public void testResolverThreads() throws Exception {
+        this.graph.put("app", dependencies("g:dep1:1", "g:dep2:1", "g:dep3:1", "g:dep4:1", "g:dep5:1"));
+        this.siblings = new CountDownLatch(2);
+        createMojo(m -> {
+            setVariableValueToObject(m, "dependencyDepth", 1L);
+            setVariableValueToObject(m, "resolverThreads", 2);
+        }).execute();
+        assertThat(this.maxResolving.get(), is(2));
+        assertThat(this.resolved, containsInAnyOrder(
+                "g:app:jar::1", "g:dep1:jar::1", "g:dep2:jar::1", "g:dep3:jar::1", "g:dep4:jar::1", "g:dep5:jar::1"));
+    }
+
+    /**
+     * As no task waits for another one, a single thread should resolve the whole graph.
+     */
+    @Test(timeout = 30000L)
+    public void testSingleResolverThread() throws Exception {
+        createMojo(m -> {
+            setVariableValueToObject(m, "dependencyDepth", 2L);
+            setVariableValueToObject(m, "resolverThreads", 1);
+        }).execute();
+        assertThat(this.maxResolving.get(), is(1));
+        assertThat(this.outputFiles(), containsInAnyOrder("app-1.jar", "lib-1.jar", "junit-1.jar", "util-1.jar"));
+    }
+
+    /**
+     * An artifact reached through several paths should be resolved once.
+     */
+    @Test
+    public void testSharedDependencies() throws Exception {
+        // app -> lib, junit; lib -> util, junit; junit -> util
+        this.graph.put("lib", dependencies("g:util:1", "g:junit:1"));
+        this.graph.put("junit", dependencies("g:util:1"));
+        createMojo(m -> setVariableValueToObject(m, "dependencyDepth", 3L)).execute();
+        assertThat(this.resolved, containsInAnyOrder("g:app:jar::1", "g:lib:jar::1", "g:junit:jar::1",
+                "g:util:jar::1"));
+        verify(this.repositorySystem, times(1)).collectDependencies(any(), any());
+    }
+
+    /**
+     * An artifact reached deep in the graph as well as closer to the requested one should have its dependencies
+     * followed down to the dependency depth.
+     */
+    @Test
+    public void testDependenciesOfArtifactReachedAtSeveralDepths() throws Exception {
+        // app -> lib, junit; lib -> junit; junit -> util
+        this.graph.put("lib", dependencies("g:junit:1"));
+        this.graph.put("junit", dependencies("g:util:1"));
+        createMojo(m -> setVariableValueToObject(m, "dependencyDepth", 2L)).execute();
+        assertThat(this.resolved, containsInAnyOrder("g:app:jar::1", "g:lib:jar::1", "g:junit:jar::1",
+                "g:util:jar::1"));
+    }
+
+    @Test
+    public void testResolutionFailure() throws Exception {
+        this.graph.put("lib", dependencies("g:missing:1"));
+        try {
+            createMojo(m -> setVariableValueToObject(m, "dependencyDepth", 2L)).execute();
+            fail("The resolution should fail");
+        } catch (MojoExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(ArtifactResolutionException.class)));
+        }
+    }
+
+    private ArtifactMojo createMojo(Consumer<ArtifactMojo> initializer) throws Exception {
+        final ArtifactMojo mojo = new ArtifactMojo();
+        final ArtifactFactory artifactFactory = mock(ArtifactFactory.class);
+        when(artifactFactory.createArtifactWithClassifier(anyString(), anyString(), anyString(), anyString(),
+                any())).thenAnswer(invocation -> new DefaultArtifact(invocation.getArgument(0),
+                invocation.getArgument(1), invocation.<String>getArgument(2), null, invocation.getArgument(3),
+                invocation.getArgument(4), new DefaultArtifactHandler(invocation.getArgument(3))));
+
+        final MavenProject project = mock(MavenProject.class);
+        when(project.getRemoteProjectRepositories()).thenReturn(Collections.emptyList());
+        final MavenSession session = mock(MavenSession.class);
+        when(session.getRepositorySession()).thenReturn(new DefaultRepositorySystemSession());
+        when(session.getCurrentProject()).thenReturn(project);
+
+        setVariableValueToObject(mojo, "groupId", "g");
+        setVariableValueToObject(mojo, "artifactId", "app");
+        setVariableValueToObject(mojo, "version", "1");
+        setVariableValueToObject(mojo, "type", "jar");
+        setVariableValueToObject(mojo, "resolverThreads", 4);
+        setVariableValueToObject(mojo, "includeOptional", true);
+        setVariableValueToObject(mojo, "outputDirectory", this.outputDirectory);
+        setVariableValueToObject(mojo, "outputMode", "copy");
+        setVariableValueToObject(mojo, "session", session);
+        setVariableValueToObject(mojo, "artifactFactory", artifactFactory);
+        setVariableValueToObject(mojo, "repositorySystem", this.repositorySystem);
+        initializer.accept(mojo);
+        return mojo;
+    }
+
+    /**
+     * Collects the graph as the resolver does, selecting the dependencies with the selector of the session.
+     */
+    private CollectResult collect(RepositorySystemSession session, CollectRequest request) {
+        final Dependency dependency = request.getRoot();
+        final DefaultDependencyNode root = new DefaultDependencyNode(dependency);
+        root.setChildren(this.collect(dependency == null ? request.getDependencies()
+                        : this.graph.getOrDefault(dependency.getArtifact().getArtifactId(), Collections.emptyList()),
+                session.getDependencySelector().deriveChildSelector(context(dependency))));
+        return new CollectResult(request).setRoot(root);
+    }
+
+    private List<DependencyNode> collect(List<Dependency> dependencies, DependencySelector selector) {
+        final List<DependencyNode> nodes = new ArrayList<>();
+        for (Dependency dependency : dependencies) {
+            if (selector.selectDependency(dependency)) {
+                final DefaultDependencyNode node = new DefaultDependencyNode(dependency);
+                node.setChildren(this.collect(this.graph.getOrDefault(dependency.getArtifact().getArtifactId(),
+                        Collections.emptyList()), selector.deriveChildSelector(context(dependency))));
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Requests the given artifacts only.
+     */
+    private static void requesting(ArtifactMojo mojo, String... artifacts) {
+        setVariableValueToObject(mojo, "groupId", null);
+        setVariableValueToObject(mojo, "artifactId", null);
+        setVariableValueToObject(mojo, "version", null);
+        setVariableValueToObject(mojo, "artifacts", artifacts);
+    }
+
+    private ArtifactResult resolve(ArtifactRequest request) throws Exception {
+        final Artifact artifact = request.getArtifact();
+        if (artifact.getArtifactId().equals("missing")) {
+            throw new ArtifactResolutionException(Collections.singletonList(new ArtifactResult(request)),
+                    "Could not find " + artifact);
+        }
+        final int concurrent = this.resolving.incrementAndGet();
+        try {
+            this.maxResolving.accumulateAndGet(concurrent, Math::max);
+            if (artifact.getArtifactId().startsWith("dep")) {
+                // lets the first siblings meet, so that they are resolved at the same time
+                this.siblings.countDown();
+                this.siblings.await(5L, TimeUnit.SECONDS);
+            }
+            final File file = new File(this.temporaryFolder.newFolder(), artifact.getArtifactId() + "-"
+                    + artifact.getVersion() + (artifact.getClassifier().isEmpty() ? "" : "-"
+                    + artifact.getClassifier()) + "." + artifact.getExtension());
+            Files.write(file.toPath(), artifact.toString().getBytes());
+            this.resolved.add(String.join(":", artifact.getGroupId(), artifact.getArtifactId(),
+                    artifact.getExtension(), artifact.getClassifier(), artifact.getVersion()));
+            return new ArtifactResult(request).setArtifact(artifact.setFile(file));
+        } finally {
+            this.resolving.decrementAndGet();
+        }
+    }
+
+    private List<String> outputFiles() {
+        final String[] names = this.outputDirectory.list();
+        return names == null ? Collections.emptyList() : Arrays.asList(names);
+    }
+
+    private static List<Dependency> dependencies(String... coordinates) {
+        final List<Dependency> dependencies = new ArrayList<>();
+        for (String gav : coordinates) {
+            dependencies.add(new Dependency(new org.eclipse.aether.artifact.DefaultArtifact(gav), "compile"));
+        }
+        return dependencies;
+    }
+
+    private static List<Dependency> scopedDependencies() {
+        final List<Dependency> dependencies = new ArrayList<>(dependencies("g:lib:1"));
+        dependencies.add(new Dependency(new org.eclipse.aether.artifact.DefaultArtifact("g:junit:1"), "test"));
+        dependencies.add(new Dependency(new org.eclipse.aether.artifact.DefaultArtifact("g:servlet:1"), "provided"));
+        dependencies.add(new Dependency(new org.eclipse.aether.artifact.DefaultArtifact("g:optional:1"), "compile",
+                true));
+        return dependencies;
+    }
+
+    private static DependencyCollectionContext context(Dependency dependency) {
+        final DependencyCollectionContext context = mock(DependencyCollectionContext.class);
+        when(context.getDependency()).thenReturn(dependency);
+        when(context.getArtifact()).thenReturn(dependency == null ? null : dependency.getArtifact());
+        return context;
+    }
+
+    private static <T> void setVariableValueToObject(Object object, String variable, T value) {
+        try {
+            final Field field = ReflectionUtils.getFieldByNameIncludingSuperclasses(variable, object.getClass());
+            field.setAccessible(true);
+            field.set(object, value);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
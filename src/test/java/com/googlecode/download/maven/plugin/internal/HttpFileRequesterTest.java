@@ -1,10 +1,18 @@
 package com.googlecode.download.maven.plugin.internal;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.googlecode.download.maven.plugin.internal.checksum.Checksums;
+import org.apache.http.Header;
+import org.apache.http.HttpVersion;
 import org.apache.http.auth.AUTH;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
 import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.Before;
@@ -15,6 +23,8 @@ import org.junit.rules.TemporaryFolder;
 import java.io.File;
 import java.net.URI;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -22,6 +32,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static java.util.Collections.emptyList;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.fail;
@@ -148,4 +159,209 @@ public class HttpFileRequesterTest {
             assertThat(e, is(instanceOf(DownloadFailureException.class)));
         }
     }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} retrieving a resource as concurrently fetched byte ranges
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testSegmentedDownload()
+            throws Exception {
+        this.wireMock.stubFor(request("HEAD", anyUrl())
+                .willReturn(ok()
+                        .withHeader("Content-Length", "13")
+                        .withHeader("Accept-Ranges", "bytes")));
+        this.wireMock.stubFor(get(anyUrl()).withHeader("Range", equalTo("bytes=0-4"))
+                .willReturn(aResponse().withStatus(206).withBody("Hello")));
+        this.wireMock.stubFor(get(anyUrl()).withHeader("Range", equalTo("bytes=5-9"))
+                .willReturn(aResponse().withStatus(206).withBody(", wor")));
+        this.wireMock.stubFor(get(anyUrl()).withHeader("Range", equalTo("bytes=10-12"))
+                .willReturn(aResponse().withStatus(206).withBody("ld!")));
+
+        createFileRequesterBuilder()
+                .withSegments(2)
+                .withMinSegmentSize(5)
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(String.join("", Files.readAllLines(this.outputFile.toPath())),
+                is("Hello, world!"));
+        this.wireMock.verify(getRequestedFor(anyUrl()).withHeader("Range", equalTo("bytes=0-4")));
+        this.wireMock.verify(getRequestedFor(anyUrl()).withHeader("Range", equalTo("bytes=5-9")));
+        this.wireMock.verify(getRequestedFor(anyUrl()).withHeader("Range", equalTo("bytes=10-12")));
+        this.wireMock.verify(0, getRequestedFor(anyUrl()).withoutHeader("Range"));
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} falling back to a single connection
+     * if the server does not support byte ranges
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testSegmentedDownloadWithoutRangeSupport()
+            throws Exception {
+        this.wireMock.stubFor(request("HEAD", anyUrl())
+                .willReturn(ok().withBody("Hello, world!")));
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(ok().withBody("Hello, world!")));
+
+        createFileRequesterBuilder()
+                .withSegments(2)
+                .withMinSegmentSize(5)
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(String.join("", Files.readAllLines(this.outputFile.toPath())),
+                is("Hello, world!"));
+        this.wireMock.verify(1, getRequestedFor(anyUrl()).withoutHeader("Range"));
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} resuming a partially downloaded file
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testResumePartialDownload()
+            throws Exception {
+        Files.write(this.outputFile.toPath(), "Hello".getBytes());
+        final PartialDownload partial = PartialDownload.load(this.outputFile, new URI(this.wireMock.baseUrl()));
+        partial.validators("\"v1\"", null);
+        partial.checkpoint(new URI(this.wireMock.baseUrl()), 5);
+        this.wireMock.stubFor(get(anyUrl())
+                .withHeader("Range", equalTo("bytes=5-"))
+                .withHeader("If-Range", equalTo("\"v1\""))
+                .willReturn(aResponse().withStatus(206)
+                        .withHeader("Content-Range", "bytes 5-12/13")
+                        .withBody(", world!")));
+
+        createFileRequesterBuilder()
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(String.join("", Files.readAllLines(this.outputFile.toPath())),
+                is("Hello, world!"));
+        assertThat(PartialDownload.load(this.outputFile, new URI(this.wireMock.baseUrl())).offset(), is(0L));
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} serving a resumed download from the cache afterwards
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testResumedDownloadIsServedFromCache()
+            throws Exception {
+        Files.write(this.outputFile.toPath(), "Hello".getBytes());
+        final PartialDownload partial = PartialDownload.load(this.outputFile, new URI(this.wireMock.baseUrl()));
+        partial.validators("\"v1\"", null);
+        partial.checkpoint(new URI(this.wireMock.baseUrl()), 5);
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(aResponse().withStatus(206)
+                        .withHeader("ETag", "\"v1\"")
+                        .withHeader("Content-Range", "bytes 5-12/13")
+                        .withBody(", world!")));
+        final File cacheDir = this.outputDirectory.newFolder("cache");
+
+        createFileRequesterBuilder()
+                .withCacheDir(cacheDir)
+                .build()
+                .download(this.outputFile, emptyList());
+        Files.delete(this.outputFile.toPath());
+        createFileRequesterBuilder()
+                .withCacheDir(cacheDir)
+                .build()
+                .download(this.outputFile, emptyList());
+
+        assertThat(String.join("", Files.readAllLines(this.outputFile.toPath())),
+                is("Hello, world!"));
+        this.wireMock.verify(1, getRequestedFor(anyUrl()));
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} linking the output file to a fresh cached file
+     * without any request with a link mode only, the HTTP cache serving a copy otherwise
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testOutputFileLinkedFromCacheOnlyWithALinkMode()
+            throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok().withBody("Hello, world!")));
+        final File cacheDir = this.outputDirectory.newFolder("cache");
+
+        final List<OutputMode> modes = Arrays.asList(OutputMode.COPY, OutputMode.COPY, OutputMode.HARDLINK);
+        for (int i = 0; i < modes.size(); ++i) {
+            createFileRequesterBuilder()
+                    .withCacheDir(cacheDir)
+                    .withOutputMode(modes.get(i))
+                    .build()
+                    .download(new File(this.outputDirectory.getRoot(), "output" + i), emptyList());
+        }
+
+        this.wireMock.verify(1, getRequestedFor(anyUrl()));
+        assertThat(String.join("", Files.readAllLines(new File(this.outputDirectory.getRoot(), "output2").toPath())),
+                is("Hello, world!"));
+        assertThat(Files.getAttribute(new File(this.outputDirectory.getRoot(), "output1").toPath(), "unix:nlink"),
+                is(1));
+        // linked to the cached file
+        assertThat(Files.getAttribute(new File(this.outputDirectory.getRoot(), "output2").toPath(), "unix:nlink"),
+                is(2));
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#isFresh(HttpCacheEntry, Date)}
+     */
+    @Test
+    public void testFreshness() {
+        final Date now = new Date();
+        final Date hourAgo = new Date(now.getTime() - 3600_000L);
+        assertThat(HttpFileRequester.isFresh(entry(hourAgo, "Cache-Control", "max-age=7200"), now), is(true));
+        assertThat(HttpFileRequester.isFresh(entry(hourAgo, "Cache-Control", "max-age=60"), now), is(false));
+        assertThat(HttpFileRequester.isFresh(entry(hourAgo, "Cache-Control", "max-age=7200, s-maxage=60"), now),
+                is(false));
+        assertThat(HttpFileRequester.isFresh(entry(hourAgo, "Cache-Control", "no-cache"), now), is(false));
+        assertThat(HttpFileRequester.isFresh(entry(hourAgo, "Expires", DateUtils.formatDate(now)), now),
+                is(false));
+        // heuristically fresh for a tenth of the time since the last modification
+        assertThat(HttpFileRequester.isFresh(entry(hourAgo, "Last-Modified",
+                DateUtils.formatDate(new Date(hourAgo.getTime() - 100 * 3600_000L))), now), is(true));
+        assertThat(HttpFileRequester.isFresh(entry(hourAgo, "Last-Modified",
+                DateUtils.formatDate(new Date(hourAgo.getTime() - 5 * 3600_000L))), now), is(false));
+        assertThat(HttpFileRequester.isFresh(entry(hourAgo, "Age", "1"), now), is(true));
+    }
+
+    private static HttpCacheEntry entry(Date date, String name, String value) {
+        return new HttpCacheEntry(date, date, new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"),
+                new Header[] {
+                    new BasicHeader("Date", DateUtils.formatDate(date)),
+                    new BasicHeader(name, value)
+                }, null);
+    }
+
+    /**
+     * Tests {@link HttpFileRequester#download(File, List)} verifying the supplied checksums
+     * while the content is written, deleting the output file on a mismatch
+     * @throws Exception thrown if {@link HttpFileRequester} creation fails
+     */
+    @Test
+    public void testChecksumVerifiedWhileDownloading()
+            throws Exception {
+        this.wireMock.stubFor(get(anyUrl())
+                .willReturn(ok().withBody("Hello, world!\n")));
+
+        createFileRequesterBuilder()
+                .withChecksums(new Checksums(null, "09fac8dbfd27bd9b4d23a00eb648aa751789536d", null, null, LOG))
+                .build()
+                .download(this.outputFile, emptyList());
+        assertThat(this.outputFile.exists(), is(true));
+
+        try {
+            createFileRequesterBuilder()
+                    .withChecksums(new Checksums(null, "wrong", null, null, LOG))
+                    .build()
+                    .download(this.outputFile, emptyList());
+            fail("A MojoFailureException should have been thrown");
+        } catch (MojoFailureException e) {
+            assertThat(e.getMessage(), containsString("Not same digest as expected"));
+            assertThat(this.outputFile.exists(), is(false));
+        }
+    }
 }
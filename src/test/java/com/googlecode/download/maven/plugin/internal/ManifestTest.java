@@ -0,0 +1,133 @@
+package com.googlecode.download.maven.plugin.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Unit tests for {@link Manifest}
+ */
+public class ManifestTest {
+    private static final String MD5 = "5d41402abc4b2a76b9719d911017c592";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCsv() throws Exception {
+        final List<Manifest.Entry> entries = read("manifest.csv",
+                "url,path,digest",
+                "http://test/a.txt",
+                "\"http://test/b?x=1,2\",dir/b.bin," + MD5);
+        assertThat(entries, hasSize(2));
+        assertThat(entries.get(0).path(), is("a.txt"));
+        assertThat(entries.get(1).uri(), is(URI.create("http://test/b?x=1,2")));
+        assertThat(entries.get(1).path(), is("dir/b.bin"));
+        assertThat(entries.get(1).digest("md5"), is(MD5));
+    }
+
+    @Test
+    public void testJsonLines() throws Exception {
+        final List<Manifest.Entry> entries = read("manifest.json",
+                "[",
+                "{\"url\": \"http://test/a\", \"path\": \"a \\\"quoted\\\" name\", \"size\": 5, \"digest\": \"MD5:" + MD5.toUpperCase() + "\"},",
+                "{\"url\": \"http://test/b\", \"sha256\": \"" + String.join("", Collections.nCopies(64, "a")) + "\"}",
+                "]");
+        assertThat(entries, hasSize(2));
+        assertThat(entries.get(0).path(), is("a \"quoted\" name"));
+        assertThat(entries.get(0).digest("md5"), is(MD5));
+        assertThat(entries.get(1).path(), is("b"));
+        assertThat(entries.get(1).digest("sha256"), startsWith("aaaa"));
+    }
+
+    @Test
+    public void testText() throws Exception {
+        final List<Manifest.Entry> entries = read("manifest.txt",
+                "# comment",
+                "",
+                "http://test/a  target/a  " + MD5);
+        assertThat(entries, hasSize(1));
+        assertThat(entries.get(0).line(), is(3));
+        assertThat(entries.get(0).path(), is("target/a"));
+        assertThat(entries.get(0).digest("md5"), is(MD5));
+    }
+
+    @Test(expected = IOException.class)
+    public void testDigestOfUnknownAlgorithm() throws Exception {
+        read("manifest.txt", "http://test/a a 1234");
+    }
+
+    /**
+     * Entries which completed are reported as such, unless they failed afterwards.
+     */
+    @Test
+    public void testCompletedEntries() throws Exception {
+        final List<Manifest.Entry> entries = read("manifest.txt", "http://test/a", "http://test/b", "http://test/c");
+        final File resultFile = new File(temporaryFolder.getRoot(), "result.jsonl");
+        try (Manifest.Result result = new Manifest.Result(resultFile)) {
+            result.record(entries.get(0), Manifest.Result.DOWNLOADED, null);
+            result.record(entries.get(1), Manifest.Result.VERIFIED, null);
+            result.record(entries.get(2), Manifest.Result.FAILED, "\"quoted\"\nmessage");
+        }
+        Files.write(resultFile.toPath(), "{\"torn".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        assertThat(Manifest.Result.completed(resultFile),
+                containsInAnyOrder(entries.get(0).key(), entries.get(1).key()));
+    }
+
+    /**
+     * Compacting keeps the latest outcome of each entry only.
+     */
+    @Test
+    public void testCompact() throws Exception {
+        final List<Manifest.Entry> entries = read("manifest.txt", "http://test/a", "http://test/b");
+        final File resultFile = new File(temporaryFolder.getRoot(), "result.jsonl");
+        try (Manifest.Result result = new Manifest.Result(resultFile)) {
+            result.record(entries.get(0), Manifest.Result.FAILED, "unavailable");
+            result.record(entries.get(1), Manifest.Result.DOWNLOADED, null);
+            result.record(entries.get(0), Manifest.Result.DOWNLOADED, null);
+            result.record(entries.get(1), Manifest.Result.VERIFIED, null);
+        }
+        Files.write(resultFile.toPath(), "{\"torn".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        Manifest.Result.compact(resultFile);
+
+        final List<String> lines = Files.readAllLines(resultFile.toPath(), StandardCharsets.UTF_8);
+        assertThat(lines, hasSize(2));
+        assertThat(lines.get(0), allOf(containsString("\"downloaded\""),
+                containsString(entries.get(0).uri().toString())));
+        assertThat(lines.get(1), allOf(containsString("\"verified\""),
+                containsString(entries.get(1).uri().toString())));
+        assertThat(Manifest.Result.completed(resultFile),
+                containsInAnyOrder(entries.get(0).key(), entries.get(1).key()));
+        assertThat(temporaryFolder.getRoot().list(), arrayContainingInAnyOrder("manifest.txt", "result.jsonl"));
+    }
+
+    private List<Manifest.Entry> read(String name, String... lines) throws IOException {
+        final File file = new File(temporaryFolder.getRoot(), name);
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        final List<Manifest.Entry> entries = new ArrayList<>();
+        try (Manifest manifest = new Manifest(file)) {
+            Manifest.Entry entry;
+            while ((entry = manifest.next()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,58 @@
+package com.googlecode.download.maven.plugin.internal;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link OutputMode}
+ */
+public class OutputModeTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testHardLinkSharesTheSource() throws Exception {
+        final Path source = this.temporaryFolder.newFile().toPath();
+        Files.write(source, "content".getBytes(StandardCharsets.UTF_8));
+        final Path target = this.temporaryFolder.getRoot().toPath().resolve("target");
+        Files.write(target, "stale".getBytes(StandardCharsets.UTF_8));
+
+        final OutputMode used = OutputMode.HARDLINK.place(source, target, new SystemStreamLog());
+
+        assertThat(used, is(OutputMode.HARDLINK));
+        assertThat(Files.isSameFile(source, target), is(true));
+    }
+
+    @Test
+    public void testCopyReplacesALinkWithoutWritingThroughIt() throws Exception {
+        final Path source = this.temporaryFolder.newFile().toPath();
+        Files.write(source, "content".getBytes(StandardCharsets.UTF_8));
+        final Path target = this.temporaryFolder.getRoot().toPath().resolve("target");
+        OutputMode.SYMLINK.place(source, target, new SystemStreamLog());
+
+        OutputMode.COPY.place(source, target, new SystemStreamLog());
+
+        assertThat(Files.isSymbolicLink(target), is(false));
+        assertThat(new String(Files.readAllBytes(target), StandardCharsets.UTF_8), is("content"));
+        assertThat(new String(Files.readAllBytes(source), StandardCharsets.UTF_8), is("content"));
+    }
+
+    @Test
+    public void testModeIsCaseInsensitive() {
+        assertThat(OutputMode.of("HardLink"), is(OutputMode.HARDLINK));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownModeIsRejected() {
+        OutputMode.of("reflink");
+    }
+}
@@ -0,0 +1,125 @@
+package com.googlecode.download.maven.plugin.internal;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link TarStreamExtractor}
+ */
+public class TarStreamExtractorTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path destination;
+    private Path outside;
+
+    @Before
+    public void setUp() throws IOException {
+        this.destination = this.temporaryFolder.newFolder("destination").toPath();
+        this.outside = this.temporaryFolder.newFolder("outside").toPath();
+    }
+
+    /**
+     * Links pointing inside of the destination directory should be created, after the files.
+     */
+    @Test
+    public void testLinks() throws Exception {
+        extract(new Archive()
+                .link("lib/current", "v1")
+                .file("lib/v1/hello.txt", "Hello, world!\n")
+                .link("hello.txt", "lib/current/hello.txt"));
+        assertThat(Files.isSymbolicLink(this.destination.resolve("lib/current")), is(true));
+        assertThat(new String(Files.readAllBytes(this.destination.resolve("hello.txt")), StandardCharsets.UTF_8),
+                is("Hello, world!\n"));
+    }
+
+    /**
+     * A link which only points outside of the destination directory through another link of the archive,
+     * even one created after it, should be rejected, and the extracted files removed.
+     */
+    @Test
+    public void testChainedLinkPointingOutside() throws Exception {
+        try {
+            extract(new Archive()
+                    .link("escape", "here/../outside")
+                    .link("here", ".")
+                    .file("file.txt", "content"));
+            fail("The link should be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("escape"));
+        }
+        assertThat(Files.exists(this.destination.resolve("file.txt")), is(false));
+        assertThat(Files.exists(this.destination.resolve("escape"), LinkOption.NOFOLLOW_LINKS), is(false));
+    }
+
+    /**
+     * A file should not be written through a link of the destination directory pointing outside of it.
+     */
+    @Test
+    public void testFileThroughExistingLinkPointingOutside() throws Exception {
+        Files.createSymbolicLink(this.destination.resolve("out"), this.outside);
+        try {
+            extract(new Archive().file("out/evil.txt", "content"));
+            fail("The entry should be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("out/evil.txt"));
+        }
+        assertThat(Files.exists(this.outside.resolve("evil.txt")), is(false));
+    }
+
+    private void extract(Archive archive) throws IOException {
+        final TarStreamExtractor extractor = TarStreamExtractor.forFile("archive.tar", this.destination.toFile(),
+                null, null, new SystemStreamLog());
+        try {
+            extractor.extract(new ByteArrayInputStream(archive.toByteArray()));
+        } catch (IOException e) {
+            extractor.rollback();
+            throw e;
+        }
+    }
+
+    private static final class Archive {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final TarArchiveOutputStream tar = new TarArchiveOutputStream(this.bytes);
+
+        Archive file(String name, String content) throws IOException {
+            final byte[] data = content.getBytes(StandardCharsets.UTF_8);
+            final TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(data.length);
+            this.tar.putArchiveEntry(entry);
+            this.tar.write(data);
+            this.tar.closeArchiveEntry();
+            return this;
+        }
+
+        Archive link(String name, String target) throws IOException {
+            final TarArchiveEntry entry = new TarArchiveEntry(name, TarArchiveEntry.LF_SYMLINK);
+            entry.setLinkName(target);
+            this.tar.putArchiveEntry(entry);
+            this.tar.closeArchiveEntry();
+            return this;
+        }
+
+        byte[] toByteArray() throws IOException {
+            this.tar.close();
+            return this.bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.googlecode.download.maven.plugin.internal;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.DependencyCollectionContext;
+import org.eclipse.aether.collection.DependencySelector;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.Exclusion;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link TransitiveDependencySelector}
+ */
+public class TransitiveDependencySelectorTest {
+    private static final Dependency ROOT = dependency("g:root:1", "compile");
+
+    /**
+     * Requested artifacts, at depth 1, should always be selected, and dependencies below the maximum depth never.
+     */
+    @Test
+    public void testDepthCutOff() {
+        final DependencySelector selector = new TransitiveDependencySelector(2L, null, new String[] {"test"},
+                false, null, null);
+        assertThat(below(selector).selectDependency(dependency("g:requested:1", "test")), is(true));
+
+        final Dependency child = dependency("g:child:1", "compile");
+        assertThat(below(selector, ROOT).selectDependency(child), is(true));
+        assertThat(below(selector, ROOT, child).selectDependency(dependency("g:grandchild:1", "compile")),
+                is(false));
+        assertThat(below(selector, ROOT, child, dependency("g:grandchild:1", "compile"))
+                .selectDependency(dependency("g:deeper:1", "compile")), is(false));
+    }
+
+    @Test
+    public void testScopes() {
+        final DependencySelector included = below(new TransitiveDependencySelector(3L,
+                new String[] {"compile", " Runtime "}, null, false, null, null), ROOT);
+        assertThat(included.selectDependency(dependency("g:compile:1", "compile")), is(true));
+        assertThat(included.selectDependency(dependency("g:default:1", "")), is(true));
+        assertThat(included.selectDependency(dependency("g:runtime:1", "runtime")), is(true));
+        assertThat(included.selectDependency(dependency("g:test:1", "test")), is(false));
+
+        final DependencySelector excluded = below(new TransitiveDependencySelector(3L,
+                null, new String[] {"test", "provided", "system"}, false, null, null), ROOT);
+        assertThat(excluded.selectDependency(dependency("g:compile:1", "compile")), is(true));
+        assertThat(excluded.selectDependency(dependency("g:runtime:1", "runtime")), is(true));
+        assertThat(excluded.selectDependency(dependency("g:test:1", "test")), is(false));
+        assertThat(excluded.selectDependency(dependency("g:provided:1", "provided")), is(false));
+        assertThat(excluded.selectDependency(dependency("g:system:1", "system")), is(false));
+
+        final DependencySelector both = below(new TransitiveDependencySelector(3L,
+                new String[] {"compile", "runtime"}, new String[] {"runtime"}, false, null, null), ROOT);
+        assertThat(both.selectDependency(dependency("g:compile:1", "compile")), is(true));
+        assertThat(both.selectDependency(dependency("g:runtime:1", "runtime")), is(false));
+    }
+
+    @Test
+    public void testOptional() {
+        final Dependency optional = dependency("g:optional:1", "compile").setOptional(true);
+        assertThat(below(new TransitiveDependencySelector(3L, null, null, false, null, null), ROOT)
+                .selectDependency(optional), is(false));
+        assertThat(below(new TransitiveDependencySelector(3L, null, null, true, null, null), ROOT)
+                .selectDependency(optional), is(true));
+        assertThat(below(new TransitiveDependencySelector(3L, null, null, false, null, null))
+                .selectDependency(optional), is(true));
+    }
+
+    /**
+     * The exclusions of all the dependencies on the path should apply, and only to their own subtree.
+     */
+    @Test
+    public void testExclusions() {
+        final DependencySelector selector = new TransitiveDependencySelector(5L, null, null, false, null, null);
+        final Dependency root = dependency("g:root:1", "compile")
+                .setExclusions(Collections.singleton(new Exclusion("excluded", "a", "*", "*")));
+        final Dependency child = dependency("g:child:1", "compile")
+                .setExclusions(Collections.singleton(new Exclusion("*", "b", "", "jar")));
+
+        final DependencySelector grandchildren = below(selector, root, child);
+        assertThat(grandchildren.selectDependency(dependency("excluded:a:1", "compile")), is(false));
+        assertThat(grandchildren.selectDependency(dependency("excluded:a:zip:sources:1", "compile")), is(false));
+        assertThat(grandchildren.selectDependency(dependency("other:b:1", "compile")), is(false));
+        assertThat(grandchildren.selectDependency(dependency("other:b:jar:sources:1", "compile")), is(true));
+        assertThat(grandchildren.selectDependency(dependency("other:b:zip:1", "compile")), is(true));
+        assertThat(grandchildren.selectDependency(dependency("excluded:c:1", "compile")), is(true));
+        assertThat(below(grandchildren, dependency("g:grandchild:1", "compile"))
+                .selectDependency(dependency("excluded:a:1", "compile")), is(false));
+
+        final DependencySelector sibling = below(selector, root, dependency("g:sibling:1", "compile"));
+        assertThat(sibling.selectDependency(dependency("excluded:a:1", "compile")), is(false));
+        assertThat(sibling.selectDependency(dependency("other:b:1", "compile")), is(true));
+        assertThat(below(selector, dependency("g:other-root:1", "compile"))
+                .selectDependency(dependency("excluded:a:1", "compile")), is(true));
+    }
+
+    /**
+     * Patterns with fewer parts than the coordinates should match anything for the missing ones.
+     */
+    @Test
+    public void testPatterns() {
+        final DependencySelector groupOnly = patterns(new String[] {"org.apache.*"}, null);
+        assertThat(groupOnly.selectDependency(dependency("org.apache.maven:maven-core:3.8.1", "compile")), is(true));
+        assertThat(groupOnly.selectDependency(dependency("org.codehaus:plexus:1", "compile")), is(false));
+
+        final DependencySelector artifact = patterns(new String[] {" org.apache.maven:maven-* ", ""}, null);
+        assertThat(artifact.selectDependency(dependency("org.apache.maven:maven-core:3.8.1", "compile")), is(true));
+        assertThat(artifact.selectDependency(dependency("org.apache.maven:plexus:3.8.1", "compile")), is(false));
+
+        final DependencySelector version = patterns(new String[] {"*:*:1.*"}, null);
+        assertThat(version.selectDependency(dependency("g:a:1.2", "compile")), is(true));
+        assertThat(version.selectDependency(dependency("g:a:2.0", "compile")), is(false));
+
+        final DependencySelector classifier = patterns(new String[] {"*:*:*:jar:sources"}, null);
+        assertThat(classifier.selectDependency(dependency("g:a:jar:sources:1", "compile")), is(true));
+        assertThat(classifier.selectDependency(dependency("g:a:1", "compile")), is(false));
+
+        final DependencySelector tooLong = patterns(new String[] {"*:*:*:*:*:*"}, null);
+        assertThat(tooLong.selectDependency(dependency("g:a:1", "compile")), is(false));
+
+        final DependencySelector excludes = patterns(null, new String[] {"org.apache.maven", "*:*:*:zip"});
+        assertThat(excludes.selectDependency(dependency("org.apache.maven:maven-core:3.8.1", "compile")), is(false));
+        assertThat(excludes.selectDependency(dependency("g:a:zip:1", "compile")), is(false));
+        assertThat(excludes.selectDependency(dependency("g:a:1", "compile")), is(true));
+
+        final DependencySelector both = patterns(new String[] {"org.apache.*"}, new String[] {"*:maven-core"});
+        assertThat(both.selectDependency(dependency("org.apache.maven:maven-core:3.8.1", "compile")), is(false));
+        assertThat(both.selectDependency(dependency("org.apache.maven:maven-model:3.8.1", "compile")), is(true));
+    }
+
+    /**
+     * Selectors of the same configuration, depth and exclusions should be equal, so that subgraphs are reused.
+     */
+    @Test
+    public void testEquality() {
+        final DependencySelector selector = new TransitiveDependencySelector(3L, new String[] {"compile"}, null,
+                false, new String[] {"g"}, null);
+        final DependencySelector same = new TransitiveDependencySelector(3L, new String[] {" compile"}, null,
+                false, new String[] {"g"}, null);
+        assertThat(below(selector, ROOT).equals(below(same, ROOT)), is(true));
+        assertThat(below(selector, ROOT).hashCode(), is(below(same, ROOT).hashCode()));
+        assertThat(below(selector, ROOT).equals(below(selector)), is(false));
+        assertThat(below(selector, ROOT).equals(below(selector,
+                ROOT.setExclusions(Collections.singleton(new Exclusion("g", "a", "*", "*"))))), is(false));
+    }
+
+    private static DependencySelector patterns(String[] includes, String[] excludes) {
+        return below(new TransitiveDependencySelector(3L, null, null, false, includes, excludes), ROOT);
+    }
+
+    /**
+     * @return the selector of the dependencies of the last of the given ones, below the requested ones
+     */
+    private static DependencySelector below(DependencySelector selector, Dependency... path) {
+        // as the resolver does for the collect request, whose dependencies are the requested artifacts
+        DependencySelector child = selector.deriveChildSelector(context(null));
+        for (Dependency dependency : Arrays.asList(path)) {
+            child = child.deriveChildSelector(context(dependency));
+        }
+        return child;
+    }
+
+    private static DependencyCollectionContext context(Dependency dependency) {
+        final DependencyCollectionContext context = mock(DependencyCollectionContext.class);
+        when(context.getDependency()).thenReturn(dependency);
+        when(context.getArtifact()).thenReturn(dependency == null ? null : dependency.getArtifact());
+        return context;
+    }
+
+    private static Dependency dependency(String coordinates, String scope) {
+        return new Dependency(new DefaultArtifact(coordinates), scope);
+    }
+}
@@ -1,22 +1,46 @@
 package com.googlecode.download.maven.plugin.internal;
 
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.googlecode.download.maven.plugin.internal.cache.FileBackedIndex;
+import com.googlecode.download.maven.plugin.internal.cache.FileIndexResource;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.http.*;
+import org.apache.http.client.AuthenticationStrategy;
+import org.apache.http.client.UserTokenHandler;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.impl.execchain.ClientExecChain;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
 import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.components.io.filemappers.FileMapper;
+import org.codehaus.plexus.components.io.filemappers.PrefixFileMapper;
 import org.codehaus.plexus.util.ReflectionUtils;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.junit.After;
 import org.junit.Before;
@@ -26,21 +50,30 @@ import org.junit.rules.TemporaryFolder;
 import org.mockito.MockedStatic;
 import org.sonatype.plexus.build.incremental.BuildContext;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -63,8 +96,9 @@ import static org.mockito.Mockito.*;
  * @author Andrzej Jarmoniuk
  */
 public class WGetMojoTest {
+    private final HeldResponse heldResponse = new HeldResponse();
     @Rule
-    public WireMockRule wireMock = new WireMockRule(options().dynamicPort());
+    public WireMockRule wireMock = new WireMockRule(options().dynamicPort().extensions(this.heldResponse));
     @Rule
     public TemporaryFolder temporaryFolder = new TemporaryFolder();
     private Path cacheDirectory;
@@ -104,6 +138,7 @@ public class WGetMojoTest {
         setVariableValueToObject(mojo, "retries", 1);
         setVariableValueToObject(mojo, "buildContext", buildContext);
         setVariableValueToObject(mojo, "overwrite", true);
+        setVariableValueToObject(mojo, "maxLockWaitTime", 30000L);
         try {
             setVariableValueToObject(mojo, "uri", new URI(
                     "http://test"));
@@ -126,13 +161,23 @@ public class WGetMojoTest {
     }
 
     private static CachingHttpClientBuilder createClientBuilderForResponse(Supplier<HttpResponse> responseSupplier) {
-        // mock client builder
-        CachingHttpClientBuilder clientBuilder = CachingHttpClientBuilder.create();
-        clientBuilder.setConnectionManager(new BasicHttpClientConnectionManager() {
+        // mock client builder; the plugin hands over a shared connection pool, which is replaced by a stub here
+        final HttpClientConnectionManager connectionManager = new BasicHttpClientConnectionManager() {
             @Override
             public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) {
             }
-        });
+        };
+        CachingHttpClientBuilder clientBuilder = new CachingHttpClientBuilder() {
+            @Override
+            protected ClientExecChain createMainExec(HttpRequestExecutor requestExec,
+                    HttpClientConnectionManager connManager, ConnectionReuseStrategy reuseStrategy,
+                    ConnectionKeepAliveStrategy keepAliveStrategy, HttpProcessor proxyHttpProcessor,
+                    AuthenticationStrategy targetAuthStrategy, AuthenticationStrategy proxyAuthStrategy,
+                    UserTokenHandler userTokenHandler) {
+                return super.createMainExec(requestExec, connectionManager, reuseStrategy, keepAliveStrategy,
+                        proxyHttpProcessor, targetAuthStrategy, proxyAuthStrategy, userTokenHandler);
+            }
+        };
         clientBuilder.setRequestExecutor(new HttpRequestExecutor() {
             @Override
             protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context) {
@@ -320,18 +365,279 @@ public class WGetMojoTest {
                 })).forEach(CompletableFuture::join);
 
         // cache should contain both entries
-        try (ObjectInputStream stream = new ObjectInputStream(Files.newInputStream(
-                cacheDirectory.resolve("index.ser")))) {
-            @SuppressWarnings("unchecked")
-            Map<URI, String> index = (Map<URI, String>) stream.readObject();
-            assertThat(index.entrySet(), hasSize(2));
-            assertThat(index.keySet(), containsInAnyOrder(firstMojoUri, secondMojoUri));
+        final FileBackedIndex index = new FileBackedIndex(cacheDirectory, new SystemStreamLog());
+        final HttpCacheEntry firstEntry = index.getEntry(firstMojoUri.toString());
+        final HttpCacheEntry secondEntry = index.getEntry(secondMojoUri.toString());
+        assertThat(firstEntry, notNullValue());
+        assertThat(secondEntry, notNullValue());
+
+        assertThat(String.join("", Files.readAllLines(
+                ((FileIndexResource) firstEntry.getResource()).getFullPath())), is("foo"));
+
+        assertThat(String.join("", Files.readAllLines(
+                ((FileIndexResource) secondEntry.getResource()).getFullPath())), is("bar"));
+    }
+
+    /**
+     * Concurrent executions downloading the same resource into different files should transfer it only once.
+     */
+    @Test
+    public void testConcurrentDownloadsOfTheSameUriAreCoalesced() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok("Hello, world!\n").withTransformers(HeldResponse.NAME)));
+        final List<WGetMojo> mojos = IntStream.range(0, 3)
+                .mapToObj(i -> createMojo(m -> {
+                    setVariableValueToObject(m, "uri", URI.create(this.wireMock.baseUrl() + "/shared"));
+                    setVariableValueToObject(m, "outputFileName", "output-" + i);
+                    setVariableValueToObject(m, "skipCache", true);
+                    setVariableValueToObject(m, "failOnError", true);
+                }))
+                .collect(Collectors.toList());
+        final List<Thread> followers = new CopyOnWriteArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(mojos.size());
+        try {
+            final List<Future<?>> executions = new ArrayList<>();
+            executions.add(executor.submit(() -> {
+                mojos.get(0).execute();
+                return null;
+            }));
+            // the leader is now downloading, and holds the response until the followers wait for it
+            assertThat(this.heldResponse.requested.await(10L, SECONDS), is(true));
+            for (WGetMojo mojo : mojos.subList(1, mojos.size())) {
+                executions.add(executor.submit(() -> {
+                    followers.add(Thread.currentThread());
+                    mojo.execute();
+                    return null;
+                }));
+            }
+            final long deadline = System.nanoTime() + SECONDS.toNanos(10L);
+            while (followers.size() < mojos.size() - 1
+                    || followers.stream().anyMatch(thread -> thread.getState() != Thread.State.TIMED_WAITING)) {
+                assertThat("Followers should wait for the leader", System.nanoTime() < deadline, is(true));
+                Thread.sleep(10L);
+            }
+            this.heldResponse.release.countDown();
+            for (Future<?> execution : executions) {
+                execution.get(10L, SECONDS);
+            }
+        } finally {
+            this.heldResponse.release.countDown();
+            executor.shutdownNow();
+        }
+
+        verify(1, getRequestedFor(urlEqualTo("/shared")));
+        for (int i = 0; i < mojos.size(); ++i) {
+            assertThat(new String(Files.readAllBytes(this.outputDirectory.resolve("output-" + i))),
+                    is("Hello, world!\n"));
+        }
+        assertThat(Files.isSameFile(this.outputDirectory.resolve("output-0"), this.outputDirectory.resolve("output-1")),
+                is(false));
+    }
+
+    /**
+     * Each entry of {@code downloads} should be retrieved, and all failures reported together.
+     */
+    @Test
+    public void testDownloadsList() throws Exception {
+        this.wireMock.stubFor(get(urlEqualTo("/first")).willReturn(ok("first")));
+        this.wireMock.stubFor(get(urlEqualTo("/second")).willReturn(ok("second")));
+        this.wireMock.stubFor(get(urlEqualTo("/missing")).willReturn(notFound()));
+        final List<Download> downloads = Arrays.asList(
+                download(this.wireMock.baseUrl() + "/first", null),
+                download(this.wireMock.baseUrl() + "/second", "renamed"),
+                download(this.wireMock.baseUrl() + "/missing", null));
+        try {
+            createMojo(m -> {
+                setVariableValueToObject(m, "uri", null);
+                setVariableValueToObject(m, "downloads", downloads);
+                setVariableValueToObject(m, "threads", 2);
+                setVariableValueToObject(m, "failOnError", true);
+            }).execute();
+            fail("The missing entry should be reported");
+        } catch (MojoExecutionException e) {
+            assertThat(e.getMessage(), containsString("1 of 3 downloads failed"));
+            assertThat(e.getMessage(), containsString("/missing"));
+        }
+        assertThat(new String(Files.readAllBytes(this.outputDirectory.resolve("first"))), is("first"));
+        assertThat(new String(Files.readAllBytes(this.outputDirectory.resolve("renamed"))), is("second"));
+    }
+
+    /**
+     * Entries of a manifest should be downloaded once, a later run skipping the completed ones.
+     */
+    @Test
+    public void testManifest() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok("Hello")));
+        final File manifest = this.temporaryFolder.newFile("manifest.csv");
+        Files.write(manifest.toPath(), Arrays.asList(
+                "url,path,digest",
+                this.wireMock.baseUrl() + "/first,first,md5:8b1a9953c4611296a827abf8c47804d7",
+                this.wireMock.baseUrl() + "/second,nested/second"));
+        final File result = new File(this.temporaryFolder.getRoot(), "result.jsonl");
+        for (int run = 0; run < 2; ++run) {
+            createMojo(m -> {
+                setVariableValueToObject(m, "uri", null);
+                setVariableValueToObject(m, "overwrite", false);
+                setVariableValueToObject(m, "manifest", manifest);
+                setVariableValueToObject(m, "manifestResult", result);
+                setVariableValueToObject(m, "failOnError", true);
+            }).execute();
+        }
+        verify(1, getRequestedFor(urlEqualTo("/first")));
+        verify(1, getRequestedFor(urlEqualTo("/second")));
+        assertThat(new String(Files.readAllBytes(this.outputDirectory.resolve("nested/second"))), is("Hello"));
+        assertThat(Files.readAllLines(result.toPath()), hasSize(2));
+    }
+
+    /**
+     * A tar archive should be extracted while it is downloaded, without being written to the output directory,
+     * and extracted again from the cache.
+     */
+    @Test
+    public void testStreamUnpack() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok().withBody(tarGz("dir/hello.txt", "Hello, world!\n"))));
+        for (int run = 0; run < 2; ++run) {
+            createMojo(m -> {
+                setVariableValueToObject(m, "uri", URI.create(this.wireMock.baseUrl() + "/archive.tar.gz"));
+                setVariableValueToObject(m, "outputFileName", "archive.tar.gz");
+                setVariableValueToObject(m, "unpack", true);
+                setVariableValueToObject(m, "streamUnpack", true);
+            }).execute();
+        }
+        verify(1, getRequestedFor(urlEqualTo("/archive.tar.gz")));
+        assertThat(new String(Files.readAllBytes(this.outputDirectory.resolve("dir/hello.txt"))),
+                is("Hello, world!\n"));
+        assertThat(this.outputDirectory.resolve("archive.tar.gz").toFile().exists(), is(false));
+    }
+
+    /**
+     * An archive unpacked by a previous build should neither be downloaded nor unpacked again, unless
+     * the unpacked files changed and are verified.
+     */
+    @Test
+    public void testUnpackedArchiveIsSkipped() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok().withBody(tarGz("dir/hello.txt", "Hello, world!\n"))));
+        final Consumer<WGetMojo> initializer = m -> {
+            setVariableValueToObject(m, "uri", URI.create(this.wireMock.baseUrl() + "/archive.tar.gz"));
+            setVariableValueToObject(m, "outputFileName", "archive.tar.gz");
+            setVariableValueToObject(m, "overwrite", false);
+            setVariableValueToObject(m, "skipCache", true);
+            setVariableValueToObject(m, "unpack", true);
+            setVariableValueToObject(m, "streamUnpack", true);
+            setVariableValueToObject(m, "verifyUnpacked", true);
+        };
+        createMojo(initializer).execute();
+        createMojo(initializer).execute();
+        verify(1, getRequestedFor(urlEqualTo("/archive.tar.gz")));
+
+        Files.delete(this.outputDirectory.resolve("dir/hello.txt"));
+        createMojo(initializer).execute();
+        verify(2, getRequestedFor(urlEqualTo("/archive.tar.gz")));
+        assertThat(new String(Files.readAllBytes(this.outputDirectory.resolve("dir/hello.txt"))),
+                is("Hello, world!\n"));
+    }
+
+    /**
+     * An archive unpacked by a previous build should be unpacked again once its file mappers are configured
+     * differently.
+     */
+    @Test
+    public void testUnpackedArchiveIsUnpackedAgainWithOtherFileMappers() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok().withBody(tarGz("dir/hello.txt", "Hello, world!\n"))));
+        final Function<String, Consumer<WGetMojo>> initializer = prefix -> m -> {
+            setVariableValueToObject(m, "uri", URI.create(this.wireMock.baseUrl() + "/archive.tar.gz"));
+            setVariableValueToObject(m, "outputFileName", "archive.tar.gz");
+            setVariableValueToObject(m, "overwrite", false);
+            setVariableValueToObject(m, "skipCache", true);
+            setVariableValueToObject(m, "unpack", true);
+            setVariableValueToObject(m, "streamUnpack", true);
+            final PrefixFileMapper fileMapper = new PrefixFileMapper();
+            fileMapper.setPrefix(prefix);
+            setVariableValueToObject(m, "fileMappers", new FileMapper[] {fileMapper});
+            final MojoExecution execution = new MojoExecution(new MojoDescriptor());
+            try {
+                execution.setConfiguration(Xpp3DomBuilder.build(new StringReader("<configuration><fileMappers>"
+                        + "<fileMapper implementation=\"" + PrefixFileMapper.class.getName() + "\">"
+                        + "<prefix>" + prefix + "</prefix></fileMapper></fileMappers></configuration>")));
+            } catch (XmlPullParserException | IOException e) {
+                throw new RuntimeException(e);
+            }
+            setVariableValueToObject(m, "mojoExecution", execution);
+        };
+        createMojo(initializer.apply("first/")).execute();
+        createMojo(initializer.apply("first/")).execute();
+        verify(1, getRequestedFor(urlEqualTo("/archive.tar.gz")));
 
-            assertThat(String.join("", Files.readAllLines(cacheDirectory.resolve(index.get(firstMojoUri)))),
-                    is("foo"));
+        createMojo(initializer.apply("second/")).execute();
+        verify(2, getRequestedFor(urlEqualTo("/archive.tar.gz")));
+        assertThat(new String(Files.readAllBytes(this.outputDirectory.resolve("second/dir/hello.txt"))),
+                is("Hello, world!\n"));
+    }
 
-            assertThat(String.join("", Files.readAllLines(cacheDirectory.resolve(index.get(secondMojoUri)))),
-                    is("bar"));
+    private static byte[] tarGz(String name, String content) throws IOException {
+        final byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(archive))) {
+            final TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(data.length);
+            tar.putArchiveEntry(entry);
+            tar.write(data);
+            tar.closeArchiveEntry();
+        }
+        return archive.toByteArray();
+    }
+
+    private Download download(String uri, String outputFileName) {
+        final Download download = new Download();
+        download.setUri(URI.create(uri));
+        setVariableValueToObject(download, "outputFileName", outputFileName);
+        return download;
+    }
+
+    /**
+     * An execution waiting for another one to download the same resource should give up after
+     * {@code maxLockWaitTime} and download it as well.
+     */
+    @Test
+    public void testSlowCoalescedDownloadIsNotAwaitedForever() throws Exception {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok("Hello, world!\n").withTransformers(HeldResponse.NAME)));
+        final List<WGetMojo> mojos = IntStream.range(0, 2)
+                .mapToObj(i -> createMojo(m -> {
+                    setVariableValueToObject(m, "uri", URI.create(this.wireMock.baseUrl() + "/shared"));
+                    setVariableValueToObject(m, "outputFileName", "output-" + i);
+                    setVariableValueToObject(m, "skipCache", true);
+                    setVariableValueToObject(m, "failOnError", true);
+                    setVariableValueToObject(m, "maxLockWaitTime", 200L);
+                }))
+                .collect(Collectors.toList());
+        final ExecutorService executor = Executors.newFixedThreadPool(mojos.size());
+        try {
+            final List<Future<?>> executions = new ArrayList<>();
+            for (WGetMojo mojo : mojos) {
+                executions.add(executor.submit(() -> {
+                    mojo.execute();
+                    return null;
+                }));
+                // the leader holds its response, so the follower can only get the file by requesting it too
+                assertThat(this.heldResponse.requested.await(10L, SECONDS), is(true));
+            }
+            final long deadline = System.nanoTime() + SECONDS.toNanos(10L);
+            while (this.heldResponse.held.get() < mojos.size()) {
+                assertThat("The follower should stop waiting for the leader", System.nanoTime() < deadline, is(true));
+                Thread.sleep(10L);
+            }
+            this.heldResponse.release.countDown();
+            for (Future<?> execution : executions) {
+                execution.get(10L, SECONDS);
+            }
+        } finally {
+            this.heldResponse.release.countDown();
+            executor.shutdownNow();
+        }
+
+        verify(2, getRequestedFor(urlEqualTo("/shared")));
+        for (int i = 0; i < mojos.size(); ++i) {
+            assertThat(new String(Files.readAllBytes(this.outputDirectory.resolve("output-" + i))),
+                    is("Hello, world!\n"));
         }
     }
 
@@ -682,6 +988,33 @@ public class WGetMojoTest {
         }
     }
 
+    /**
+     * Plugin execution should fail at once if the transfer failed before anything could be resumed,
+     * even though retries are configured.
+     */
+    @Test
+    public void testBuildShouldFailIfTransferFailsWithoutCheckpoint() {
+        this.wireMock.stubFor(get(anyUrl()).willReturn(aResponse().withFault(Fault.MALFORMED_RESPONSE_CHUNK)));
+        Log log = spy(SystemStreamLog.class);
+        StringBuilder loggedWarningMessages = new StringBuilder();
+        doAnswer(invocation -> loggedWarningMessages.append((CharSequence) invocation.getArgument(0)))
+                .when(log).warn(anyString());
+        try {
+            createMojo(m -> {
+                setVariableValueToObject(m, "log", log);
+                setVariableValueToObject(m, "uri", URI.create(wireMock.baseUrl()));
+                setVariableValueToObject(m, "skipCache", true);
+                setVariableValueToObject(m, "failOnError", true);
+                setVariableValueToObject(m, "retries", 3);
+            }).execute();
+            fail("The mojo should have failed upon error");
+        } catch (Exception e) {
+            assertThat(e, is(instanceOf(MojoExecutionException.class)));
+            assertThat(e.getCause(), is(instanceOf(IOException.class)));
+            assertThat(loggedWarningMessages.toString(), not(containsString("Retrying")));
+        }
+    }
+
     /**
      * Plugin should ignore a download failure if instructed to do so. It should not repeat the query.
      */
@@ -704,6 +1037,104 @@ public class WGetMojoTest {
         }
     }
 
+    /**
+     * With the content-addressable cache, a file whose SHA-256 matches stored content must be copied from the cache
+     * without any HTTP request, even if it was retrieved from another URL.
+     */
+    @Test
+    public void testContentAddressableCacheLookupBySha256() throws Exception {
+        final String sha256 = "d9014c4624844aa5bac314773d6b689ad467fa4e1d1a50a1b8a99d5a95f72ff5";
+        this.wireMock.stubFor(get(urlEqualTo("/first")).willReturn(ok("Hello, world!\n")));
+        this.wireMock.stubFor(get(urlEqualTo("/mirror")).willReturn(notFound()));
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.url("/first")));
+            setVariableValueToObject(m, "contentAddressableCache", true);
+            setVariableValueToObject(m, "sha256", sha256);
+        }).execute();
+        assertThat(Files.exists(cacheDirectory.resolve("cas").resolve(sha256.substring(0, 2)).resolve(sha256)),
+                is(true));
+
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.url("/mirror")));
+            setVariableValueToObject(m, "outputFileName", "second-output-file");
+            setVariableValueToObject(m, "failOnError", true);
+            setVariableValueToObject(m, "sha256", sha256);
+        }).execute();
+        verify(0, getRequestedFor(urlEqualTo("/mirror")));
+        assertThat(String.join("", Files.readAllLines(outputDirectory.resolve("second-output-file"))),
+                is("Hello, world!"));
+    }
+
+    /**
+     * With the content-addressable cache, stored content must be verified against all supplied checksums:
+     * a damaged blob, or one contradicting another checksum, must not be used.
+     */
+    @Test
+    public void testContentAddressableCacheVerifiesStoredContent() throws Exception {
+        final String sha256 = "d9014c4624844aa5bac314773d6b689ad467fa4e1d1a50a1b8a99d5a95f72ff5";
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok("Hello, world!\n")));
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.url("/first")));
+            setVariableValueToObject(m, "contentAddressableCache", true);
+            setVariableValueToObject(m, "sha256", sha256);
+        }).execute();
+
+        try {
+            createMojo(m -> {
+                setVariableValueToObject(m, "uri", URI.create(wireMock.url("/mirror")));
+                setVariableValueToObject(m, "outputFileName", "second-output-file");
+                setVariableValueToObject(m, "sha256", sha256);
+                setVariableValueToObject(m, "md5", "00000000000000000000000000000000");
+            }).execute();
+            fail("The contradicting MD5 should have been rejected");
+        } catch (MojoExecutionException e) {
+            assertThat(getRootCause(e).getMessage(), containsString("Not same digest as expected"));
+            assertThat(Files.exists(outputDirectory.resolve("second-output-file")), is(false));
+        }
+        verify(1, getRequestedFor(urlEqualTo("/mirror")));
+
+        Files.write(cacheDirectory.resolve("cas").resolve(sha256.substring(0, 2)).resolve(sha256),
+                "Damaged\n".getBytes(StandardCharsets.UTF_8));
+        createMojo(m -> {
+            setVariableValueToObject(m, "uri", URI.create(wireMock.url("/other-mirror")));
+            setVariableValueToObject(m, "outputFileName", "third-output-file");
+            setVariableValueToObject(m, "sha256", sha256);
+        }).execute();
+        verify(1, getRequestedFor(urlEqualTo("/other-mirror")));
+        assertThat(String.join("", Files.readAllLines(outputDirectory.resolve("third-output-file"))),
+                is("Hello, world!"));
+    }
+
+    /**
+     * An archive extracted while it is downloaded should not be extracted from a damaged blob of the
+     * content-addressable cache, but downloaded again.
+     */
+    @Test
+    public void testStreamUnpackVerifiesStoredContent() throws Exception {
+        final byte[] archive = tarGz("hello.txt", "Hello, world!\n");
+        final StringBuilder sha256 = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(archive)) {
+            sha256.append(String.format("%02x", b));
+        }
+        this.wireMock.stubFor(get(anyUrl()).willReturn(ok().withBody(archive)));
+        for (String path : Arrays.asList("/first", "/mirror")) {
+            createMojo(m -> {
+                setVariableValueToObject(m, "uri", URI.create(this.wireMock.url(path)));
+                setVariableValueToObject(m, "outputFileName", "archive.tar.gz");
+                setVariableValueToObject(m, "unpack", true);
+                setVariableValueToObject(m, "streamUnpack", true);
+                setVariableValueToObject(m, "contentAddressableCache", true);
+                setVariableValueToObject(m, "sha256", sha256.toString());
+            }).execute();
+            final Path blob = this.cacheDirectory.resolve("cas").resolve(sha256.substring(0, 2))
+                    .resolve(sha256.toString());
+            assertThat(Files.exists(blob), is(true));
+            Files.write(blob, "Damaged\n".getBytes(StandardCharsets.UTF_8));
+            Files.delete(this.outputDirectory.resolve("hello.txt"));
+        }
+        verify(1, getRequestedFor(urlEqualTo("/mirror")));
+    }
+
     /**
      * Plugin should not repeat if download succeeds.
      */
@@ -804,4 +1235,37 @@ public class WGetMojoTest {
     public void testShouldWarnOnRedirectsIfDisabled() {
         IntStream.of(301, 302, 303).forEach(this::testNoRedirects);
     }
+
+    /**
+     * Holds the responses of the stubs using it until released, signalling that a request was received.
+     */
+    private static final class HeldResponse extends ResponseDefinitionTransformer {
+        private static final String NAME = "held";
+        private final CountDownLatch requested = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger held = new AtomicInteger();
+
+        @Override
+        public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition,
+                FileSource files, Parameters parameters) {
+            this.held.incrementAndGet();
+            this.requested.countDown();
+            try {
+                this.release.await(30L, SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return responseDefinition;
+        }
+
+        @Override
+        public boolean applyGlobally() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return NAME;
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package com.googlecode.download.maven.plugin.internal;
+
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.components.io.filemappers.FileMapper;
+import org.codehaus.plexus.components.io.filemappers.RegExpFileMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link ZipExtractor}
+ */
+public class ZipExtractorTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testExtract() throws Exception {
+        final File archive = this.temporaryFolder.newFile("archive.zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(archive)) {
+            for (int i = 0; i < 1000; ++i) {
+                add(zip, "root/dir" + i % 10 + "/file" + i, "content " + i);
+            }
+            add(zip, "root/dir0/file0", "replaced");
+        }
+        final File destination = this.temporaryFolder.newFolder("destination");
+        final RegExpFileMapper mapper = new RegExpFileMapper();
+        mapper.setPattern("^root/");
+        mapper.setReplacement("");
+
+        final List<Path> extracted = new ZipExtractor(destination, new FileMapper[] {mapper}, null, 4,
+                new SystemStreamLog()).extract(archive);
+
+        assertThat(extracted, hasSize(1000));
+        assertThat(extracted, hasItem(Paths.get("dir3/file123")));
+        assertThat(read(destination.toPath().resolve("dir3/file123")), is("content 123"));
+        assertThat(read(destination.toPath().resolve("dir0/file0")), is("replaced"));
+    }
+
+    @Test
+    public void testSelectedEntries() throws Exception {
+        final File archive = this.temporaryFolder.newFile("archive.zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(archive)) {
+            add(zip, "bin/java", "java");
+            add(zip, "lib/tools.jar", "tools");
+            add(zip, "lib/test/junit.jar", "junit");
+            add(zip, "src.zip", "sources");
+        }
+        final File destination = this.temporaryFolder.newFolder("destination");
+
+        final List<Path> extracted = new ZipExtractor(destination, null,
+                EntrySelector.of(new String[] {"bin/", "**/*.jar"}, new String[] {"**/test/**"}), 4,
+                new SystemStreamLog()).extract(archive);
+
+        assertThat(extracted, containsInAnyOrder(Paths.get("bin/java"), Paths.get("lib/tools.jar")));
+        assertThat(new File(destination, "lib/test").exists(), is(false));
+        assertThat(new File(destination, "src.zip").exists(), is(false));
+    }
+
+    @Test
+    public void testEntryOutsideOfDestinationIsRejected() throws Exception {
+        final File archive = this.temporaryFolder.newFile("archive.zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(archive)) {
+            add(zip, "../escaped", "content");
+        }
+        final File destination = this.temporaryFolder.newFolder("destination");
+        try {
+            new ZipExtractor(destination, null, null, 4, new SystemStreamLog()).extract(archive);
+            fail("The entry should be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("outside of the target directory"));
+        }
+        assertThat(new File(this.temporaryFolder.getRoot(), "escaped").exists(), is(false));
+    }
+
+    /**
+     * Links should be created once the files are written, and rejected if they only point outside of the
+     * destination directory through another link of the archive.
+     */
+    @Test
+    public void testLinks() throws Exception {
+        final File archive = this.temporaryFolder.newFile("archive.zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(archive)) {
+            link(zip, "lib/current", "v1");
+            add(zip, "lib/v1/hello.txt", "Hello, world!\n");
+            link(zip, "hello.txt", "lib/current/hello.txt");
+        }
+        final File destination = this.temporaryFolder.newFolder("destination");
+        new ZipExtractor(destination, null, null, 4, new SystemStreamLog()).extract(archive);
+        assertThat(read(destination.toPath().resolve("hello.txt")), is("Hello, world!\n"));
+
+        final File escaping = this.temporaryFolder.newFile("escaping.zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(escaping)) {
+            link(zip, "escape", "here/../outside");
+            link(zip, "here", ".");
+        }
+        final File other = this.temporaryFolder.newFolder("other");
+        try {
+            new ZipExtractor(other, null, null, 4, new SystemStreamLog()).extract(escaping);
+            fail("The link should be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("escape"));
+        }
+        assertThat(other.list(), emptyArray());
+    }
+
+    /**
+     * A file should not be written through a link of the destination directory pointing outside of it.
+     */
+    @Test
+    public void testEntryThroughExistingLinkIsRejected() throws Exception {
+        final File archive = this.temporaryFolder.newFile("archive.zip");
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(archive)) {
+            add(zip, "out/evil.txt", "content");
+        }
+        final File destination = this.temporaryFolder.newFolder("destination");
+        final File outside = this.temporaryFolder.newFolder("outside");
+        Files.createSymbolicLink(destination.toPath().resolve("out"), outside.toPath());
+        try {
+            new ZipExtractor(destination, null, null, 4, new SystemStreamLog()).extract(archive);
+            fail("The entry should be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("outside of the target directory"));
+        }
+        assertThat(outside.list(), emptyArray());
+    }
+
+    private static void link(ZipArchiveOutputStream zip, String name, String target) throws IOException {
+        final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setUnixMode(UnixStat.LINK_FLAG | UnixStat.DEFAULT_LINK_PERM);
+        zip.putArchiveEntry(entry);
+        zip.write(target.getBytes(StandardCharsets.UTF_8));
+        zip.closeArchiveEntry();
+    }
+
+    private static void add(ZipArchiveOutputStream zip, String name, String content) throws IOException {
+        zip.putArchiveEntry(new ZipArchiveEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeArchiveEntry();
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,152 @@
+package com.googlecode.download.maven.plugin.internal.cache;
+
+import com.googlecode.download.maven.plugin.internal.checksum.Checksums;
+import com.googlecode.download.maven.plugin.internal.checksum.VerifiedDigestStore;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link CacheJanitor}
+ */
+public class CacheJanitorTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1L);
+    private static final String REFERENCED = "referenced_0123456789abcdef0123456789abcdef";
+    private static final String ORPHAN = "orphan_0123456789abcdef0123456789abcdef";
+    private static final String YOUNG_ORPHAN = "0123456789abcdef0123456789abcdef";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        final Path cache = temporaryFolder.newFolder().toPath();
+        final long now = System.currentTimeMillis();
+        final IndexJournal journal = new IndexJournal(cache, new SystemStreamLog());
+        put(journal, cache, "oldest", now - 3 * HOUR);
+        put(journal, cache, "older", now - 2 * HOUR);
+        put(journal, cache, "recent", now - HOUR);
+
+        new CacheJanitor(cache, new SystemStreamLog()).clean(0L, 1, 0L, false);
+
+        assertThat(journal.read().keySet(), containsInAnyOrder(URI.create("http://test/recent")));
+        assertThat(Files.exists(cache.resolve("oldest")), is(false));
+        assertThat(Files.exists(cache.resolve("older")), is(false));
+        assertThat(Files.exists(cache.resolve("recent")), is(true));
+    }
+
+    @Test
+    public void testExpiredEntriesAreEvicted() throws Exception {
+        final Path cache = temporaryFolder.newFolder().toPath();
+        final long now = System.currentTimeMillis();
+        final IndexJournal journal = new IndexJournal(cache, new SystemStreamLog());
+        put(journal, cache, "expired", now - 3 * TimeUnit.DAYS.toMillis(1L));
+        put(journal, cache, "recent", now - HOUR);
+
+        new CacheJanitor(cache, new SystemStreamLog()).clean(0L, 0, TimeUnit.DAYS.toMillis(2L), false);
+
+        assertThat(journal.read().keySet(), containsInAnyOrder(URI.create("http://test/recent")));
+    }
+
+    /**
+     * Entries used very recently may be in use by another process, so they must be kept even over the limits.
+     */
+    @Test
+    public void testRecentlyUsedEntriesAreKept() throws Exception {
+        final Path cache = temporaryFolder.newFolder().toPath();
+        final long now = System.currentTimeMillis();
+        final IndexJournal journal = new IndexJournal(cache, new SystemStreamLog());
+        put(journal, cache, "first", now - 1000L);
+        put(journal, cache, "second", now);
+
+        new CacheJanitor(cache, new SystemStreamLog()).clean(1L, 1, 0L, false);
+
+        assertThat(journal.read().size(), is(2));
+    }
+
+    @Test
+    public void testUnreferencedFilesAreSwept() throws Exception {
+        final Path cache = temporaryFolder.newFolder().toPath();
+        final IndexJournal journal = new IndexJournal(cache, new SystemStreamLog());
+        put(journal, cache, REFERENCED, System.currentTimeMillis());
+        Files.setLastModifiedTime(cache.resolve(REFERENCED), FileTime.fromMillis(0L));
+        orphan(cache.resolve(ORPHAN), 0L);
+        orphan(cache.resolve(YOUNG_ORPHAN), System.currentTimeMillis());
+        orphan(cache.resolve("notes.txt"), 0L);
+
+        new CacheJanitor(cache, new SystemStreamLog()).clean(0L, 0, 0L, true);
+
+        assertThat(Files.exists(cache.resolve(REFERENCED)), is(true));
+        assertThat(Files.exists(cache.resolve(ORPHAN)), is(false));
+        assertThat(Files.exists(cache.resolve(YOUNG_ORPHAN)), is(true));
+        assertThat(Files.exists(cache.resolve("notes.txt")), is(true));
+        assertThat(Files.exists(cache.resolve(IndexJournal.FILENAME)), is(true));
+    }
+
+    /**
+     * The digests recorded for evicted files must not be kept forever.
+     */
+    @Test
+    public void testDigestsOfEvictedEntriesAreDropped() throws Exception {
+        final Path cache = temporaryFolder.newFolder().toPath();
+        final long now = System.currentTimeMillis();
+        final IndexJournal journal = new IndexJournal(cache, new SystemStreamLog());
+        put(journal, cache, "older", now - 2 * HOUR);
+        put(journal, cache, "recent", now - HOUR);
+        final VerifiedDigestStore store =
+                new VerifiedDigestStore(cache.resolve(VerifiedDigestStore.DIRECTORY).toFile(), false);
+        for (String name : new String[]{"older", "recent"}) {
+            new Checksums(DigestUtils.md5Hex(new byte[]{1, 2, 3}), null, null, null, store, new SystemStreamLog())
+                    .record(cache.resolve(name).toFile());
+        }
+        try (Stream<Path> digests = Files.list(cache.resolve(VerifiedDigestStore.DIRECTORY))) {
+            for (Path digest : (Iterable<Path>) digests::iterator) {
+                Files.setLastModifiedTime(digest, FileTime.fromMillis(0L));
+            }
+        }
+
+        new CacheJanitor(cache, new SystemStreamLog()).clean(0L, 1, 0L, false);
+
+        try (Stream<Path> digests = Files.list(cache.resolve(VerifiedDigestStore.DIRECTORY))) {
+            assertThat(digests.count(), is(1L));
+        }
+    }
+
+    /**
+     * Without limits, the cache directory may be shared with other tools, so nothing is swept unless requested.
+     */
+    @Test
+    public void testNothingIsSweptWithoutLimitsUnlessRequested() throws Exception {
+        final Path cache = temporaryFolder.newFolder().toPath();
+        final IndexJournal journal = new IndexJournal(cache, new SystemStreamLog());
+        put(journal, cache, REFERENCED, System.currentTimeMillis());
+        orphan(cache.resolve(ORPHAN), 0L);
+
+        new CacheJanitor(cache, new SystemStreamLog()).clean(0L, 0, 0L, false);
+
+        assertThat(Files.exists(cache.resolve(ORPHAN)), is(true));
+    }
+
+    private static void orphan(Path file, long modified) throws Exception {
+        Files.write(file, new byte[]{1});
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+    }
+
+    private static void put(IndexJournal journal, Path cache, String name, long accessed) throws Exception {
+        Files.write(cache.resolve(name), new byte[]{1, 2, 3});
+        journal.put(URI.create("http://test/" + name), name, accessed);
+    }
+}
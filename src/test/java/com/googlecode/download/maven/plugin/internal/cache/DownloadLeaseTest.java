@@ -0,0 +1,91 @@
+package com.googlecode.download.maven.plugin.internal.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Unit tests for {@link DownloadLease}
+ */
+public class DownloadLeaseTest {
+    private static final String URI = "http://test/foo";
+    private static final Log LOG = new SystemStreamLog();
+    private static final long TIMEOUT = TimeUnit.MINUTES.toMillis(1L);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testLeaseIsExclusive() throws Exception {
+        final Path cache = temporaryFolder.newFolder().toPath();
+        final DownloadLease first = DownloadLease.acquire(cache, URI, TIMEOUT, LOG);
+        assertThat(first.waited(), is(false));
+
+        final CompletableFuture<Boolean> second = CompletableFuture.supplyAsync(() -> {
+            try (DownloadLease lease = DownloadLease.acquire(cache, URI, TIMEOUT, LOG)) {
+                return lease.waited();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            second.get(500L, TimeUnit.MILLISECONDS);
+            throw new AssertionError("The lease should not be acquired twice");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        first.close();
+        assertThat(second.get(5L, TimeUnit.SECONDS), is(true));
+        assertThat(Files.exists(lockFile(cache)), is(false));
+    }
+
+    /**
+     * A lease left behind by a crashed process must be taken over once it is no longer renewed.
+     */
+    @Test
+    public void testStaleLeaseIsRecovered() throws Exception {
+        final Path cache = temporaryFolder.newFolder().toPath();
+        final Path lockFile = lockFile(cache);
+        Files.createDirectories(lockFile.getParent());
+        Files.write(lockFile, "crashed".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(lockFile, FileTime.fromMillis(System.currentTimeMillis()
+                - TimeUnit.SECONDS.toMillis(2 * DownloadLease.STALE_SECONDS)));
+
+        try (DownloadLease lease = DownloadLease.acquire(cache, URI, TIMEOUT, LOG)) {
+            assertThat(new String(Files.readAllBytes(lockFile), StandardCharsets.UTF_8), not(is("crashed")));
+        }
+        assertThat(Files.exists(lockFile), is(false));
+    }
+
+    /**
+     * Waiting for a live lease must end once the timeout expires.
+     */
+    @Test
+    public void testWaitingForALeaseTimesOut() throws Exception {
+        final Path cache = temporaryFolder.newFolder().toPath();
+        try (DownloadLease first = DownloadLease.acquire(cache, URI, TIMEOUT, LOG)) {
+            assertThat(DownloadLease.acquire(cache, URI, 200L, LOG), is(nullValue()));
+        }
+    }
+
+    private static Path lockFile(Path cache) {
+        return cache.resolve(DownloadLease.DIRECTORY)
+                .resolve(DigestUtils.sha1Hex(URI.getBytes(StandardCharsets.UTF_8)) + ".lock");
+    }
+}
@@ -0,0 +1,69 @@
+package com.googlecode.download.maven.plugin.internal.cache;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link ExtractedTreeCache}
+ */
+public class ExtractedTreeCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testTreeIsExtractedOnceAndMaterializedTwice() throws Exception {
+        final Path cache = this.temporaryFolder.newFolder().toPath();
+        final AtomicInteger extractions = new AtomicInteger();
+        final ExtractedTreeCache.Extraction extraction = directory -> {
+            extractions.incrementAndGet();
+            Files.createDirectories(directory.resolve("bin"));
+            Files.write(directory.resolve("bin/tool"), "tool".getBytes(StandardCharsets.UTF_8));
+            Files.write(directory.resolve("README"), "readme".getBytes(StandardCharsets.UTF_8));
+        };
+        final String key = ExtractedTreeCache.key("digest", "mappers");
+        final Path first = this.temporaryFolder.newFolder().toPath();
+        final Path second = this.temporaryFolder.newFolder().toPath();
+        Files.write(second.resolve("README"), "stale".getBytes(StandardCharsets.UTF_8));
+
+        final ExtractedTreeCache trees = new ExtractedTreeCache(cache, 2, new SystemStreamLog());
+        trees.materialize(trees.get(key, extraction), first);
+        final List<Path> files = trees.materialize(trees.get(key, extraction), second);
+
+        assertThat(extractions.get(), is(1));
+        assertThat(files, containsInAnyOrder(Paths.get("bin/tool"), Paths.get("README")));
+        assertThat(new String(Files.readAllBytes(second.resolve("README")), StandardCharsets.UTF_8), is("readme"));
+        assertThat(new String(Files.readAllBytes(first.resolve("bin/tool")), StandardCharsets.UTF_8), is("tool"));
+    }
+
+    @Test
+    public void testUnusedTreesAreEvicted() throws Exception {
+        final Path cache = this.temporaryFolder.newFolder().toPath();
+        final ExtractedTreeCache trees = new ExtractedTreeCache(cache, 1, new SystemStreamLog());
+        final Path unused = trees.get(ExtractedTreeCache.key("unused"),
+                directory -> Files.write(directory.resolve("file"), new byte[1]));
+        final Path used = trees.get(ExtractedTreeCache.key("used"),
+                directory -> Files.write(directory.resolve("file"), new byte[1]));
+        Files.setLastModifiedTime(unused, FileTime.fromMillis(System.currentTimeMillis()
+                - TimeUnit.DAYS.toMillis(2L)));
+
+        new CacheJanitor(cache, new SystemStreamLog()).clean(0L, 0, TimeUnit.DAYS.toMillis(1L), false);
+
+        assertThat(Files.exists(unused), is(false));
+        assertThat(Files.exists(used), is(true));
+    }
+}
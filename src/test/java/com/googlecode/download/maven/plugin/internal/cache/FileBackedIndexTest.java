@@ -6,15 +6,22 @@ import org.apache.http.HttpVersion;
 import org.apache.http.client.cache.HttpCacheEntry;
 import org.apache.http.message.BasicStatusLine;
 import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import wiremock.org.eclipse.jetty.http.HttpStatus;
 
+import java.io.ObjectOutputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
@@ -24,6 +31,9 @@ import static org.hamcrest.core.Is.is;
  */
 public class FileBackedIndexTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void testAsUri() {
         assertThat(FileBackedIndex.asUri("foo://test/file.bin"), is(URI.create("foo://test/file.bin")));
@@ -73,4 +83,92 @@ public class FileBackedIndexTest {
             assertThat(index.getEntry("foo://file.bin"), is(nullValue()));
         }
     }
+
+    /**
+     * Entries added by one index must be visible to another index using the same directory.
+     */
+    @Test
+    public void testEntriesArePersisted() throws Exception {
+        final Path path = temporaryFolder.newFolder().toPath();
+        Files.write(path.resolve("file.bin"), new byte[]{1});
+        new FileBackedIndex(path, new SystemStreamLog()).putEntry("foo://test/file.bin", entry("file.bin", path));
+        assertThat(new FileBackedIndex(path, new SystemStreamLog()).getEntry("foo://test/file.bin"), is(notNullValue()));
+        assertThat(Files.exists(path.resolve("index.bin")), is(true));
+    }
+
+    /**
+     * An index written by an older version of the plugin must be migrated.
+     */
+    @Test
+    public void testLegacyIndexIsMigrated() throws Exception {
+        final Path path = temporaryFolder.newFolder().toPath();
+        Files.write(path.resolve("file.bin"), new byte[]{1});
+        final Map<URI, String> legacy = new HashMap<>();
+        legacy.put(URI.create("foo://test/file.bin"), "file.bin");
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(path.resolve("index.ser")))) {
+            out.writeObject(legacy);
+        }
+        assertThat(new FileBackedIndex(path, new SystemStreamLog()).getEntry("foo://test/file.bin"), is(notNullValue()));
+    }
+
+    /**
+     * A record torn by a crashed writer must be ignored, without losing the previous entries.
+     */
+    @Test
+    public void testTornRecordIsIgnored() throws Exception {
+        final Path path = temporaryFolder.newFolder().toPath();
+        Files.write(path.resolve("file.bin"), new byte[]{1});
+        new FileBackedIndex(path, new SystemStreamLog()).putEntry("foo://test/file.bin", entry("file.bin", path));
+        Files.write(path.resolve("index.bin"), new byte[]{0, 0, 0, 42, 1}, StandardOpenOption.APPEND);
+        assertThat(new FileBackedIndex(path, new SystemStreamLog()).getEntry("foo://test/file.bin"), is(notNullValue()));
+    }
+
+    /**
+     * Entries written by another process must be picked up by an index which already read the journal.
+     * Once the shared state is forgotten, the second index does not share the in-memory entries of the first one,
+     * like an index of another process.
+     */
+    @Test
+    public void testChangesFromAnotherProcessAreDetected() throws Exception {
+        final Path path = temporaryFolder.newFolder().toPath();
+        Files.write(path.resolve("first.bin"), new byte[]{1});
+        Files.write(path.resolve("second.bin"), new byte[]{2});
+        final FileBackedIndex index = new FileBackedIndex(path, new SystemStreamLog());
+        IndexJournal.forget(path);
+        final FileBackedIndex other = new FileBackedIndex(path, new SystemStreamLog());
+
+        index.putEntry("foo://test/first.bin", entry("first.bin", path));
+        assertThat(index.getEntry("foo://test/second.bin"), is(nullValue()));
+        assertThat(other.getEntry("foo://test/first.bin"), is(notNullValue()));
+
+        other.putEntry("foo://test/second.bin", entry("second.bin", path));
+        assertThat(index.getEntry("foo://test/second.bin"), is(notNullValue()));
+    }
+
+    /**
+     * Indexes opened through a symbolic link to the cache directory must share the state of the directory,
+     * as the JVM rejects a second lock on the same lock file.
+     */
+    @Test
+    public void testCacheDirectoryCanBeASymbolicLink() throws Exception {
+        final Path path = temporaryFolder.newFolder().toPath();
+        final Path link = temporaryFolder.getRoot().toPath().resolve("link");
+        Files.createSymbolicLink(link, path);
+        Files.write(path.resolve("first.bin"), new byte[]{1});
+        Files.write(path.resolve("second.bin"), new byte[]{2});
+        final FileBackedIndex index = new FileBackedIndex(path, new SystemStreamLog());
+        final FileBackedIndex other = new FileBackedIndex(link, new SystemStreamLog());
+
+        other.putEntry("foo://test/first.bin", entry("first.bin", link));
+        index.putEntry("foo://test/second.bin", entry("second.bin", path));
+
+        assertThat(other.getEntry("foo://test/second.bin"), is(notNullValue()));
+        assertThat(index.getEntry("foo://test/first.bin"), is(notNullValue()));
+    }
+
+    private static HttpCacheEntry entry(String file, Path cacheDir) {
+        return new HttpCacheEntry(new Date(), new Date(),
+                new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.OK_200, "OK"), new Header[]{},
+                new FileIndexResource(Paths.get(file), cacheDir));
+    }
 }
@@ -0,0 +1,90 @@
+package com.googlecode.download.maven.plugin.internal.checksum;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests for {@link Checksums}
+ */
+public class ChecksumsTest {
+    private static final String HELLO_MD5 = "5d41402abc4b2a76b9719d911017c592";
+    private static final String HELLO_SHA1 = "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d";
+    private static final Log LOG = new SystemStreamLog();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testValidateWithSeveralChecksums() throws Exception {
+        final File file = this.write("hello");
+        new Checksums(HELLO_MD5, HELLO_SHA1, null, null, LOG).validate(file);
+        assertThat(new Checksums(HELLO_MD5, "0000", null, null, LOG).isValid(file), is(false));
+    }
+
+    /**
+     * An unchanged file must be accepted from the digest store, without being read again.
+     */
+    @Test
+    public void testUnchangedFileIsNotHashedAgain() throws Exception {
+        final File file = this.write("hello");
+        final File store = this.folder.newFolder("checksums");
+        new Checksums(HELLO_MD5, null, null, null, new VerifiedDigestStore(store, false), LOG).validate(file);
+
+        // same size and modification time, different content: only a full hash can tell
+        this.rewriteKeepingAttributes(file, "jello");
+        new Checksums(HELLO_MD5, null, null, null, new VerifiedDigestStore(store, false), LOG).validate(file);
+        assertThat(new Checksums(HELLO_MD5, null, null, null, new VerifiedDigestStore(store, true), LOG)
+            .isValid(file), is(false));
+    }
+
+    @Test
+    public void testModifiedFileIsHashedAgain() throws Exception {
+        final File file = this.write("hello");
+        final File store = this.folder.newFolder("checksums");
+        new Checksums(HELLO_MD5, null, null, null, new VerifiedDigestStore(store, false), LOG).validate(file);
+
+        Files.write(file.toPath(), "jello".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 10_000L));
+        try {
+            new Checksums(HELLO_MD5, null, null, null, new VerifiedDigestStore(store, false), LOG).validate(file);
+            throw new AssertionError("The modified file should not match");
+        } catch (MojoFailureException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testStoreRequiresAllSuppliedChecksums() throws Exception {
+        final File file = this.write("hello");
+        final File store = this.folder.newFolder("checksums");
+        new Checksums(HELLO_MD5, null, null, null, new VerifiedDigestStore(store, false), LOG).validate(file);
+
+        this.rewriteKeepingAttributes(file, "jello");
+        assertThat(new Checksums(HELLO_MD5, HELLO_SHA1, null, null, new VerifiedDigestStore(store, false), LOG)
+            .isValid(file), is(false));
+    }
+
+    private File write(String content) throws Exception {
+        final File file = this.folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private void rewriteKeepingAttributes(File file, String content) throws Exception {
+        final FileTime modified = Files.getLastModifiedTime(file.toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file.toPath(), modified);
+    }
+}